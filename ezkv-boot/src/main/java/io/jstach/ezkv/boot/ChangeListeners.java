@@ -0,0 +1,86 @@
+package io.jstach.ezkv.boot;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.jstach.ezkv.boot.EzkvConfig.ReloadableConfig.ChangeListener;
+import io.jstach.ezkv.boot.EzkvConfig.ReloadableConfig.Subscription;
+import io.jstach.ezkv.boot.EzkvConfig.StableConfig;
+import io.jstach.ezkv.kvs.KeyValues;
+
+/*
+ * Listeners by key prefix. After a reload the changed keys are sorted so that the
+ * changed keys of a prefix are found with one lookup and only the listeners of prefixes
+ * with changes are called. If there are no listeners the configs are not compared.
+ */
+final class ChangeListeners {
+
+	private final Map<String, CopyOnWriteArrayList<ChangeListener>> listeners = new ConcurrentSkipListMap<>();
+
+	Subscription add(String prefix, ChangeListener listener) {
+		listeners.computeIfAbsent(prefix, p -> new CopyOnWriteArrayList<>()).add(listener);
+		return () -> listeners.computeIfPresent(prefix, (p, l) -> {
+			l.remove(listener);
+			return l.isEmpty() ? null : l;
+		});
+	}
+
+	void changed(StableConfig previous, StableConfig next) {
+		if (listeners.isEmpty()) {
+			return;
+		}
+		var diff = keyValues(previous).diff(keyValues(next));
+		if (diff.isEmpty()) {
+			return;
+		}
+		NavigableSet<String> keys = new TreeSet<>();
+		keys.addAll(diff.added());
+		keys.addAll(diff.removed());
+		keys.addAll(diff.changed());
+		for (var e : listeners.entrySet()) {
+			String prefix = e.getKey();
+			Set<String> changed = new LinkedHashSet<>();
+			for (String key : keys.tailSet(prefix, true)) {
+				if (!key.startsWith(prefix)) {
+					break;
+				}
+				changed.add(key);
+			}
+			if (changed.isEmpty()) {
+				continue;
+			}
+			var prefixDiff = changed.size() == keys.size() ? diff : new KeyValues.Diff(retain(diff.added(), changed),
+					retain(diff.removed(), changed), retain(diff.changed(), changed));
+			for (var listener : e.getValue()) {
+				try {
+					listener.onChange(next, prefixDiff);
+				}
+				catch (RuntimeException ex) {
+					System.getLogger("io.jstach.ezkv.boot.EzkvConfig")
+						.log(System.Logger.Level.WARNING, "Config change listener failed. prefix: " + prefix, ex);
+				}
+			}
+		}
+	}
+
+	private static Set<String> retain(Set<String> keys, Set<String> changed) {
+		Set<String> retained = new LinkedHashSet<>(keys);
+		retained.retainAll(changed);
+		return retained;
+	}
+
+	private static KeyValues keyValues(StableConfig config) {
+		if (config instanceof DefaultEzkvConfig c) {
+			return c.keyValues();
+		}
+		var builder = KeyValues.builder();
+		config.toMap().forEach(builder::add);
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,83 @@
+package io.jstach.ezkv.boot;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.jspecify.annotations.Nullable;
+
+import io.jstach.ezkv.boot.EzkvConfig.ReloadableConfig;
+import io.jstach.ezkv.boot.EzkvConfig.StableConfig;
+
+/*
+ * An object derived from some keys of a reloadable config. The object, the generation of
+ * the config it was derived from and the values of the keys are one immutable snapshot
+ * so reading it is a volatile read and a generation check. The snapshot does not keep
+ * the config so an old config can be collected as soon as it is replaced. When the generation changed the values of the keys are compared and
+ * the object is only derived again if one of them changed otherwise the snapshot is moved
+ * to the new generation.
+ *
+ * Deriving again is done while holding a lock so that an expensive object like a
+ * connection pool is not created twice. We use a lock instead of synchronized because
+ * the config can be read on virtual threads.
+ */
+final class ConfigMemo<T> implements Supplier<T> {
+
+	private final ReloadableConfig config;
+
+	private final String[] keys;
+
+	private final Function<? super StableConfig, ? extends T> factory;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private volatile @Nullable Snapshot<T> snapshot;
+
+	/*
+	 * The values are in the order of the keys.
+	 */
+	private record Snapshot<T>(long generation, @Nullable String[] values, T value) {
+	}
+
+	ConfigMemo(ReloadableConfig config, Set<String> keys, Function<? super StableConfig, ? extends T> factory) {
+		this.config = config;
+		this.keys = Set.copyOf(keys).toArray(String[]::new);
+		this.factory = factory;
+	}
+
+	@Override
+	public T get() {
+		var current = config.stableConfig();
+		var s = snapshot;
+		if (s != null && s.generation == current.generation()) {
+			return s.value;
+		}
+		lock.lock();
+		try {
+			s = snapshot;
+			if (s != null && s.generation == current.generation()) {
+				return s.value;
+			}
+			@Nullable
+			String[] values = values(current);
+			T value = s != null && Arrays.equals(s.values, values) ? s.value : factory.apply(current);
+			snapshot = new Snapshot<>(current.generation(), values, value);
+			return value;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private @Nullable String[] values(StableConfig config) {
+		@Nullable
+		String[] values = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			values[i] = config.getProperty(keys[i]);
+		}
+		return values;
+	}
+
+}
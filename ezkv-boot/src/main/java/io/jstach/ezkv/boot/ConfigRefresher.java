@@ -0,0 +1,78 @@
+package io.jstach.ezkv.boot;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.jstach.ezkv.boot.EzkvConfig.ReloadableConfig;
+import io.jstach.ezkv.boot.EzkvConfig.ReloadableConfig.RefreshPolicy;
+import io.jstach.ezkv.boot.EzkvConfig.ReloadableConfig.Subscription;
+
+/*
+ * Reloads a config periodically on a virtual thread until closed. A failed reload keeps
+ * the current config so we just wait longer before trying again.
+ */
+final class ConfigRefresher implements Subscription {
+
+	private final ReloadableConfig config;
+
+	private final RefreshPolicy policy;
+
+	private final Thread thread;
+
+	private volatile boolean closed;
+
+	private ConfigRefresher(ReloadableConfig config, RefreshPolicy policy) {
+		this.config = config;
+		this.policy = policy;
+		this.thread = Thread.ofVirtual().name("ezkv-refresh").unstarted(this::run);
+	}
+
+	static ConfigRefresher start(ReloadableConfig config, RefreshPolicy policy) {
+		var refresher = new ConfigRefresher(config, policy);
+		refresher.thread.start();
+		return refresher;
+	}
+
+	private void run() {
+		Duration delay = policy.interval();
+		while (!closed) {
+			try {
+				Thread.sleep(jitter(delay));
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			if (closed) {
+				return;
+			}
+			try {
+				config.reloadAsync().join();
+				delay = policy.interval();
+			}
+			catch (CompletionException e) {
+				delay = delay.multipliedBy(2);
+				if (delay.compareTo(policy.maxBackoff()) > 0) {
+					delay = policy.maxBackoff();
+				}
+				System.getLogger("io.jstach.ezkv.boot.EzkvConfig")
+					.log(System.Logger.Level.WARNING, "Config refresh failed. Retrying in " + delay, e.getCause());
+			}
+		}
+	}
+
+	private Duration jitter(Duration delay) {
+		long jitter = policy.jitter().toNanos();
+		if (jitter == 0) {
+			return delay;
+		}
+		return delay.plusNanos(ThreadLocalRandom.current().nextLong(-jitter, jitter + 1));
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		thread.interrupt();
+	}
+
+}
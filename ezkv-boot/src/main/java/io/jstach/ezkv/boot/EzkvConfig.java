@@ -1,6 +1,7 @@
 package io.jstach.ezkv.boot;
 
 import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -10,13 +11,22 @@ import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.jspecify.annotations.Nullable;
 
-import io.jstach.ezkv.kvs.KeyValue;
+import io.jstach.ezkv.kvs.KeyValueConversionException;
 import io.jstach.ezkv.kvs.KeyValues;
 import io.jstach.ezkv.kvs.KeyValuesEnvironment;
+import io.jstach.ezkv.kvs.KeyValuesLoader;
 import io.jstach.ezkv.kvs.KeyValuesSystem;
 import io.jstach.ezkv.kvs.Variables;
 import io.jstach.ezkv.kvs.KeyValuesEnvironment.Logger;
@@ -83,9 +93,11 @@ public sealed interface EzkvConfig {
 
 	/**
 	 * A reloadable config allows reloading but does not guarantee that repeated calls of
-	 * {@link #getProperty(String)} and similar will return the same results. Notice that
-	 * there is no event propagation or watching of resources. That is am exercise for the
-	 * consumer of the library.
+	 * {@link #getProperty(String)} and similar will return the same results. Resources
+	 * are not watched but the config can be {@linkplain #refresh(RefreshPolicy)
+	 * refreshed} periodically in the background and components can
+	 * {@linkplain #onChange(String, ChangeListener) listen} to changes of the keys they
+	 * use instead of polling.
 	 */
 	sealed interface ReloadableConfig extends EzkvConfig {
 
@@ -96,11 +108,134 @@ public sealed interface EzkvConfig {
 		public StableConfig stableConfig();
 
 		/**
-		 * Will reload the config and return the previous config.
+		 * Will reload the config and return the previous config. This blocks until the
+		 * reload is done and is the same as waiting on {@link #reloadAsync()}.
 		 * @return previous config.
+		 * @throws RuntimeException if the reload failed in which case the current config
+		 * is not changed.
 		 */
 		public EzkvConfig reload();
 
+		/**
+		 * Reloads the config in the background. Concurrent calls share the same reload so
+		 * many threads reacting to the same change only load once. Until the reload is
+		 * done {@link #stableConfig()} returns the previous config and afterwards the new
+		 * config. If the reload fails the previous config is kept and the returned future
+		 * completes exceptionally.
+		 * @return future of the new config.
+		 */
+		public CompletableFuture<StableConfig> reloadAsync();
+
+		/**
+		 * Registers a listener that is called after a reload if keys starting with the
+		 * prefix were added, removed or changed. The listener is only given the changes
+		 * of keys with the prefix and is not called if none of them changed. Listeners
+		 * are called on the thread that did the reload.
+		 * @param prefix the key prefix like <code>db.</code> or empty for all keys.
+		 * @param listener called with the new config and the changes.
+		 * @return subscription that removes the listener when closed.
+		 */
+		public Subscription onChange(String prefix, ChangeListener listener);
+
+		/**
+		 * Starts reloading the config periodically on a virtual thread. Reloads are the
+		 * same as {@link #reloadAsync()} so they are shared with other reloads and notify
+		 * {@linkplain #onChange(String, ChangeListener) listeners}.
+		 * @param policy how often to reload.
+		 * @return subscription that stops refreshing when closed.
+		 */
+		public Subscription refresh(RefreshPolicy policy);
+
+		/**
+		 * Creates a supplier of an object derived from the given keys like a connection
+		 * pool or a compiled pattern. The object is created on first use and cached until
+		 * a reload changes the value of one of the keys in which case it is created again
+		 * on next use with the new config. Reloads that do not change the keys keep the
+		 * cached object. Reading the cached object does not lock.
+		 * @param <T> the type of the derived object.
+		 * @param keys the keys the object is derived from.
+		 * @param factory creates the object from the config and should only use the keys.
+		 * @return supplier of the current object.
+		 * @see StableConfig#generation()
+		 */
+		public <T> Supplier<T> memo(Set<String> keys, Function<? super StableConfig, ? extends T> factory);
+
+		/**
+		 * Listens to changes of keys after a reload.
+		 */
+		@FunctionalInterface
+		public interface ChangeListener {
+
+			/**
+			 * Called after a reload changed keys the listener is interested in. The
+			 * listener may reload the config which starts another reload.
+			 * @param config the new config.
+			 * @param diff the changed keys which all start with the prefix of the
+			 * listener.
+			 */
+			void onChange(StableConfig config, KeyValues.Diff diff);
+
+		}
+
+		/**
+		 * A registration that can be cancelled.
+		 */
+		public interface Subscription extends AutoCloseable {
+
+			/**
+			 * Cancels the registration. Calling close again does nothing.
+			 */
+			@Override
+			void close();
+
+		}
+
+		/**
+		 * How often to refresh in the background. Every delay is the interval plus or
+		 * minus a random amount up to the jitter so that many processes started at the
+		 * same time do not reload at the same time. After a failed reload the delay is
+		 * doubled up to the max backoff until a reload succeeds.
+		 *
+		 * @param interval the time between reloads.
+		 * @param jitter the most the interval is randomly changed by.
+		 * @param maxBackoff the longest delay after failures.
+		 */
+		public record RefreshPolicy(Duration interval, Duration jitter, Duration maxBackoff) {
+
+			/**
+			 * Validates the policy.
+			 * @param interval the time between reloads.
+			 * @param jitter the most the interval is randomly changed by.
+			 * @param maxBackoff the longest delay after failures.
+			 * @throws IllegalArgumentException if the interval is not positive, the
+			 * jitter is negative or not less than the interval or the max backoff is less
+			 * than the interval.
+			 */
+			public RefreshPolicy {
+				if (interval.isNegative() || interval.isZero()) {
+					throw new IllegalArgumentException("interval should be positive");
+				}
+				if (jitter.isNegative() || jitter.compareTo(interval) >= 0) {
+					throw new IllegalArgumentException(
+							"jitter should not be negative and should be less than interval");
+				}
+				if (maxBackoff.compareTo(interval) < 0) {
+					throw new IllegalArgumentException("maxBackoff should not be less than interval");
+				}
+			}
+
+			/**
+			 * A policy with a jitter of a tenth of the interval and a max backoff of
+			 * eight times the interval.
+			 * @param interval the time between reloads.
+			 * @return policy.
+			 */
+			public static RefreshPolicy of(Duration interval) {
+				return new RefreshPolicy(interval, interval.dividedBy(10), interval.multipliedBy(8));
+			}
+
+		}
+
 	}
 
 	/**
@@ -125,6 +260,73 @@ public sealed interface EzkvConfig {
 		 */
 		Map<String, String> toMap();
 
+		/**
+		 * The generation of this config which is greater than the generation of every
+		 * config loaded before it. Configs with the same generation are the same config
+		 * so comparing generations is a cheap way to check if a reload happened.
+		 * @return generation number.
+		 */
+		long generation();
+
+		/**
+		 * Gets the property as an int. Converted values are cached for the lifetime of
+		 * the stable config so repeated reads do not parse again.
+		 * @param key to use for lookup for matching value.
+		 * @param fallback returned if the property is missing.
+		 * @return converted value or fallback.
+		 * @throws KeyValueConversionException if the value is not an int.
+		 * @see KeyValues#getInt(String, int)
+		 */
+		int getInt(String key, int fallback) throws KeyValueConversionException;
+
+		/**
+		 * Gets the property as a long.
+		 * @param key to use for lookup for matching value.
+		 * @param fallback returned if the property is missing.
+		 * @return converted value or fallback.
+		 * @throws KeyValueConversionException if the value is not a long.
+		 * @see KeyValues#getLong(String, long)
+		 */
+		long getLong(String key, long fallback) throws KeyValueConversionException;
+
+		/**
+		 * Gets the property as a boolean.
+		 * @param key to use for lookup for matching value.
+		 * @param fallback returned if the property is missing.
+		 * @return converted value or fallback.
+		 * @throws KeyValueConversionException if the value is not a boolean.
+		 * @see KeyValues#getBoolean(String, boolean)
+		 */
+		boolean getBoolean(String key, boolean fallback) throws KeyValueConversionException;
+
+		/**
+		 * Gets the property as a duration.
+		 * @param key to use for lookup for matching value.
+		 * @param fallback returned if the property is missing.
+		 * @return converted value or fallback.
+		 * @throws KeyValueConversionException if the value is not a duration.
+		 * @see KeyValues#getDuration(String, Duration)
+		 */
+		Duration getDuration(String key, Duration fallback) throws KeyValueConversionException;
+
+		/**
+		 * Gets the property as a number of bytes.
+		 * @param key to use for lookup for matching value.
+		 * @param fallback returned if the property is missing.
+		 * @return converted value or fallback.
+		 * @throws KeyValueConversionException if the value is not a data size.
+		 * @see KeyValues#getDataSize(String, long)
+		 */
+		long getDataSize(String key, long fallback) throws KeyValueConversionException;
+
+		/**
+		 * Gets the property as a comma separated list.
+		 * @param key to use for lookup for matching value.
+		 * @return converted value which is empty if the property is missing.
+		 * @see KeyValues#getList(String)
+		 */
+		List<String> getList(String key);
+
 	}
 
 }
@@ -159,6 +361,14 @@ class QueueLogger implements Logger {
 
 	@Override
 	public void closed(KeyValuesSystem system) {
+		flush();
+	}
+
+	/*
+	 * The system is kept for reloads so the events of every load are logged after the
+	 * load instead of when the system is closed.
+	 */
+	void flush() {
 		System.Logger logger = System.getLogger("io.jstach.ezkv.boot.EzkvConfig");
 		Event e;
 		while ((e = events.poll()) != null) {
@@ -190,45 +400,104 @@ final class Holder {
 	}
 
 	static EzkvConfig.StableConfig load() {
+		return Warm.LOADER.load();
+	}
 
-		record BootEnvironment(QueueLogger logger) implements KeyValuesEnvironment {
-			@Override
-			public Logger getLogger() {
-				return this.logger;
-			}
+	static class Warm {
+
+		final static BootLoader LOADER = new BootLoader();
+
+	}
+
+}
+
+/*
+ * Keeps the key values system and the loader of the application.properties and profile
+ * chain for the life of the application so that reloading does not run the service loader
+ * or create the service providers, media finders and filters again and the resource cache
+ * of the loader is reused. The loader is only built again if the default properties
+ * change.
+ */
+final class BootLoader {
+
+	record BootEnvironment(QueueLogger logger) implements KeyValuesEnvironment {
+		@Override
+		public Logger getLogger() {
+			return this.logger;
 		}
-		var logger = new QueueLogger();
-		try (var system = KeyValuesSystem.builder() //
-			.useServiceLoader()
-			.environment(new BootEnvironment(logger))
-			.filter(new OnProfileKeyValuesFilter())
-			.addPreFilter("onprofile", "")
-			.build()) {
-			var properties = Holder.PROPERTIES;
-
-			var loader = system //
-				.loader();
-			if (properties != null) {
-				loader.add("setDefaultProperties", properties);
+	}
+
+	private final QueueLogger logger = new QueueLogger();
+
+	/*
+	 * We use a lock instead of synchronized because loading can happen on virtual
+	 * threads.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private @Nullable KeyValuesSystem system;
+
+	private @Nullable KeyValuesLoader loader;
+
+	private @Nullable KeyValues loaderProperties;
+
+	EzkvConfig.StableConfig load() {
+		try {
+			KeyValuesSystem system;
+			KeyValuesLoader loader;
+			lock.lock();
+			try {
+				system = system();
+				loader = loader(system, Holder.PROPERTIES);
 			}
-			var kvs = loader //
-				.variables(Variables::ofSystemProperties)
-				.variables(Variables::ofSystemEnv)
-				.variables(RandomVariables::of)
-				.add("classpath:/application.properties", b -> b.name("application").noRequire(true))
-				.add("profile.classpath:/application-__PROFILE__.properties", b -> b.name("profiles").noRequire(true))
-				.load();
-			Map<String, KeyValue> m = new LinkedHashMap<>();
-			for (var kv : kvs) {
-				m.put(kv.key(), kv);
+			finally {
+				lock.unlock();
 			}
-			var config = new DefaultEzkvConfig("application.properties", m);
+			var kvs = loader.load();
+			var config = new DefaultEzkvConfig("application.properties", kvs);
 			config.setSystemProperties(system);
 			return config;
 		}
 		catch (Exception e) {
 			throw new RuntimeException(e);
 		}
+		finally {
+			logger.flush();
+		}
+	}
+
+	private KeyValuesSystem system() {
+		var system = this.system;
+		if (system == null) {
+			this.system = system = KeyValuesSystem.builder() //
+				.useServiceLoader()
+				.environment(new BootEnvironment(logger))
+				.filter(new OnProfileKeyValuesFilter())
+				.addPreFilter("onprofile", "")
+				.build();
+		}
+		return system;
+	}
+
+	private KeyValuesLoader loader(KeyValuesSystem system, @Nullable KeyValues properties) {
+		var loader = this.loader;
+		if (loader != null && properties == loaderProperties) {
+			return loader;
+		}
+		var builder = system.loader();
+		if (properties != null) {
+			builder.add("setDefaultProperties", properties);
+		}
+		loader = builder //
+			.variables(Variables::ofSystemProperties)
+			.variables(Variables::ofSystemEnv)
+			.variables(RandomVariables::of)
+			.add("classpath:/application.properties", b -> b.name("application").noRequire(true))
+			.add("profile.classpath:/application-__PROFILE__.properties", b -> b.name("profiles").noRequire(true))
+			.build();
+		this.loader = loader;
+		this.loaderProperties = properties;
+		return loader;
 	}
 
 }
@@ -237,9 +506,23 @@ final class WrapperEzkvConfig implements EzkvConfig.ReloadableConfig {
 
 	volatile EzkvConfig.StableConfig config;
 
+	private final Supplier<EzkvConfig.StableConfig> loader;
+
+	/*
+	 * The reload in progress which callers join instead of loading again.
+	 */
+	private final AtomicReference<@Nullable CompletableFuture<StableConfig>> reloading = new AtomicReference<>();
+
+	private final ChangeListeners listeners = new ChangeListeners();
+
 	public WrapperEzkvConfig(EzkvConfig.StableConfig config) {
+		this(config, Holder::load);
+	}
+
+	WrapperEzkvConfig(EzkvConfig.StableConfig config, Supplier<EzkvConfig.StableConfig> loader) {
 		super();
 		this.config = config;
+		this.loader = loader;
 	}
 
 	@Override
@@ -255,50 +538,175 @@ final class WrapperEzkvConfig implements EzkvConfig.ReloadableConfig {
 	@Override
 	public EzkvConfig reload() {
 		var c = config;
-		config = Holder.load();
+		try {
+			reloadAsync().join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException re) {
+				throw re;
+			}
+			throw e;
+		}
 		return c;
+	}
+
+	@Override
+	public CompletableFuture<StableConfig> reloadAsync() {
+		while (true) {
+			var current = reloading.get();
+			if (current != null) {
+				return current.copy();
+			}
+			var future = new CompletableFuture<StableConfig>();
+			if (reloading.compareAndSet(null, future)) {
+				Thread.ofVirtual().name("ezkv-reload").start(() -> load(future));
+				return future.copy();
+			}
+		}
+	}
 
+	@Override
+	public Subscription onChange(String prefix, ChangeListener listener) {
+		return listeners.add(prefix, listener);
+	}
+
+	@Override
+	public Subscription refresh(RefreshPolicy policy) {
+		return ConfigRefresher.start(this, policy);
+	}
+
+	@Override
+	public <T> Supplier<T> memo(Set<String> keys, Function<? super StableConfig, ? extends T> factory) {
+		return new ConfigMemo<>(this, keys, factory);
+	}
+
+	/*
+	 * The config is swapped before the reload is cleared so a caller that starts another
+	 * reload after this one always sees the new config. The reload is cleared before the
+	 * listeners are notified so that a listener that reloads starts a new reload instead
+	 * of joining the reload that is notifying it which would never complete. Listeners
+	 * are notified before the future completes so that a caller of reload sees the
+	 * effects of the listeners.
+	 *
+	 * A listener that throws an error does not undo the swap. The future is still
+	 * completed with the new config before the error reaches the reload thread as
+	 * otherwise every caller of this reload would wait forever.
+	 */
+	private void load(CompletableFuture<StableConfig> future) {
+		StableConfig c;
+		try {
+			c = loader.get();
+		}
+		catch (Throwable e) {
+			reloading.set(null);
+			future.completeExceptionally(e);
+			return;
+		}
+		var previous = config;
+		config = c;
+		reloading.set(null);
+		try {
+			listeners.changed(previous, c);
+		}
+		finally {
+			future.complete(c);
+		}
 	}
 
 }
 
 final class DefaultEzkvConfig implements EzkvConfig.StableConfig {
 
+	private static final AtomicLong generations = new AtomicLong();
+
 	private final String description;
 
-	private final Map<String, KeyValue> keyValues;
+	private final long generation = generations.incrementAndGet();
 
-	public DefaultEzkvConfig(String description, Map<String, KeyValue> keyValues) {
+	/*
+	 * Memoized so that getProperty and the typed lookups use the index, map and
+	 * conversion cache of the key values which are built once for this config.
+	 */
+	private final KeyValues keyValues;
+
+	/*
+	 * Descriptions of keys are built on first use. Racing threads build the same string
+	 * and the first one wins.
+	 */
+	private final ConcurrentHashMap<String, String> descriptions = new ConcurrentHashMap<>();
+
+	public DefaultEzkvConfig(String description, KeyValues keyValues) {
 		super();
 		this.description = description;
-		this.keyValues = keyValues;
+		this.keyValues = keyValues.memoize();
+	}
+
+	KeyValues keyValues() {
+		return keyValues;
+	}
+
+	@Override
+	public long generation() {
+		return generation;
 	}
 
 	@Override
 	public @Nullable String getProperty(String key) {
 		var kv = keyValues.get(key);
-		if (kv != null) {
-			return kv.expanded();
-		}
-		return null;
+		return kv == null ? null : kv.expanded();
 	}
 
 	@Override
 	public String describe(String key) {
-		return this.description + " " + keyValues.get(key);
+		var description = descriptions.get(key);
+		if (description != null) {
+			return description;
+		}
+		var kv = keyValues.get(key);
+		if (kv == null) {
+			throw new NoSuchElementException("Missing key: " + key);
+		}
+		description = this.description + " " + kv;
+		var existing = descriptions.putIfAbsent(key, description);
+		return existing == null ? description : existing;
 	}
 
+	/*
+	 * The map of the memoized key values which is built once.
+	 */
 	@Override
 	public Map<String, String> toMap() {
-		return toMap(keyValues);
+		return keyValues.toMap();
 	}
 
-	private static Map<String, String> toMap(Map<String, KeyValue> kvs) {
-		Map<String, String> m = new LinkedHashMap<>();
-		for (var e : kvs.entrySet()) {
-			m.put(e.getKey(), e.getValue().value());
-		}
-		return Map.copyOf(m);
+	@Override
+	public int getInt(String key, int fallback) {
+		return keyValues.getInt(key, fallback);
+	}
+
+	@Override
+	public long getLong(String key, long fallback) {
+		return keyValues.getLong(key, fallback);
+	}
+
+	@Override
+	public boolean getBoolean(String key, boolean fallback) {
+		return keyValues.getBoolean(key, fallback);
+	}
+
+	@Override
+	public Duration getDuration(String key, Duration fallback) {
+		return keyValues.getDuration(key, fallback);
+	}
+
+	@Override
+	public long getDataSize(String key, long fallback) {
+		return keyValues.getDataSize(key, fallback);
+	}
+
+	@Override
+	public List<String> getList(String key) {
+		return keyValues.getList(key);
 	}
 
 	void setSystemProperties(KeyValuesSystem system) {
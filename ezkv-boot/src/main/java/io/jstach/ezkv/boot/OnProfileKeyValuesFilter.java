@@ -15,12 +15,12 @@ class OnProfileKeyValuesFilter implements KeyValuesFilter {
 		if (!filter.filter().equals("onprofile")) {
 			return Optional.empty();
 		}
-		var map = keyValues.toMap();
 		String activateOn = context.environment().qualifyMetaKey("config.activate.on-profile");
-		String profileExp = map.get(activateOn);
-		if (profileExp == null) {
+		var activateOnKeyValue = keyValues.get(activateOn);
+		if (activateOnKeyValue == null) {
 			return Optional.of(keyValues);
 		}
+		String profileExp = activateOnKeyValue.expanded();
 		// context.environment().getLogger().debug("Found profile exp: " + profileExp);
 		var _profiles = Profiles.of(profileExp);
 		var selectedProfiles = Set.copyOf(context.profiles());
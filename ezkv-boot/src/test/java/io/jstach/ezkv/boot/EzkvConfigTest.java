@@ -1,11 +1,30 @@
 package io.jstach.ezkv.boot;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
+import io.jstach.ezkv.boot.EzkvConfig.ReloadableConfig.RefreshPolicy;
+import io.jstach.ezkv.boot.EzkvConfig.StableConfig;
+import io.jstach.ezkv.kvs.KeyValues;
+
 class EzkvConfigTest {
 
 	@Test
@@ -17,7 +36,158 @@ class EzkvConfigTest {
 		// config.reload();
 
 		assertEquals("Hello", config.getProperty("DEMO"));
+		assertEquals(true, config.stableConfig().getBoolean("logging.systemlogger.initialize", false));
+		assertEquals(List.of("Hello"), config.stableConfig().getList("DEMO"));
+
+		var previous = config.stableConfig();
+		assertSame(previous, config.reload());
+		assertEquals("Hello", config.getProperty("DEMO"));
+		assertEquals(previous.toMap(), config.stableConfig().toMap());
+
+	}
+
+	@Test
+	void testStableConfigLookups() {
+		var kvs = KeyValues.builder().add("a", "1").add("b", "2").add("a", "3").build();
+		var config = new DefaultEzkvConfig("test", kvs);
+		assertEquals("3", config.getProperty("a"));
+		assertEquals("2", config.getProperty("b"));
+		assertNull(config.getProperty("c"));
+		assertEquals(Map.of("a", "3", "b", "2"), config.toMap());
+		assertSame(config.toMap(), config.toMap());
+		assertSame(config.describe("a"), config.describe("a"));
+		assertThrows(NoSuchElementException.class, () -> config.describe("c"));
+		for (int i = 0; i < 100; i++) {
+			kvs = kvs.overlay(KeyValues.builder().add("k" + i, "" + i).build());
+		}
+		var large = new DefaultEzkvConfig("test", kvs);
+		for (int i = 0; i < 100; i++) {
+			assertEquals("" + i, large.getProperty("k" + i));
+		}
+	}
+
+	@Test
+	void testReloadAsync() throws Exception {
+		var first = new DefaultEzkvConfig("first", KeyValues.builder().add("a", "1").build());
+		var second = new DefaultEzkvConfig("second", KeyValues.builder().add("a", "2").build());
+		var loads = new AtomicInteger();
+		var latch = new CountDownLatch(1);
+		var fail = new AtomicBoolean();
+		var config = new WrapperEzkvConfig(first, () -> {
+			loads.incrementAndGet();
+			try {
+				latch.await();
+			}
+			catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			if (fail.get()) {
+				throw new IllegalStateException("fail");
+			}
+			return second;
+		});
+		var f1 = config.reloadAsync();
+		var f2 = config.reloadAsync();
+		assertSame(first, config.stableConfig());
+		latch.countDown();
+		assertSame(second, f1.get());
+		assertSame(second, f2.get());
+		assertEquals(1, loads.get());
+		assertEquals("2", config.getProperty("a"));
+
+		fail.set(true);
+		var e = assertThrows(ExecutionException.class, () -> config.reloadAsync().get());
+		assertEquals("fail", e.getCause().getMessage());
+		assertThrows(IllegalStateException.class, config::reload);
+		assertSame(second, config.stableConfig());
+		assertEquals(3, loads.get());
+	}
+
+	@Test
+	void testOnChangeAndRefresh() throws Exception {
+		var generation = new AtomicInteger();
+		var config = new WrapperEzkvConfig(config(0), () -> config(generation.incrementAndGet()));
+		List<KeyValues.Diff> db = new CopyOnWriteArrayList<>();
+		List<KeyValues.Diff> app = new CopyOnWriteArrayList<>();
+		var dbSubscription = config.onChange("db.", (c, diff) -> db.add(diff));
+		config.onChange("app.", (c, diff) -> app.add(diff));
+		config.reload();
+		assertEquals(List.of(new KeyValues.Diff(Set.of("db.new"), Set.of(), Set.of("db.url"))), db);
+		assertEquals(List.of(), app);
+
+		dbSubscription.close();
+		dbSubscription.close();
+		var refreshed = new CountDownLatch(2);
+		config.onChange("", (c, diff) -> refreshed.countDown());
+		try (var refresh = config
+			.refresh(new RefreshPolicy(Duration.ofMillis(10), Duration.ofMillis(5), Duration.ofMillis(100)))) {
+			assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, db.size());
+		assertThrows(IllegalArgumentException.class, () -> RefreshPolicy.of(Duration.ZERO));
+	}
+
+	@Test
+	void testListenerErrorDoesNotBlockReload() {
+		var generation = new AtomicInteger();
+		var config = new WrapperEzkvConfig(config(0), () -> config(generation.incrementAndGet()));
+		var calls = new AtomicInteger();
+		config.onChange("db.", (c, diff) -> {
+			if (calls.incrementAndGet() == 1) {
+				throw new AssertionError("listener");
+			}
+		});
+		config.reload();
+		assertEquals("jdbc:1", config.getProperty("db.url"));
+		config.reload();
+		assertEquals("jdbc:2", config.getProperty("db.url"));
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	void testListenerReloads() {
+		var generation = new AtomicInteger();
+		var config = new WrapperEzkvConfig(config(0), () -> config(generation.incrementAndGet()));
+		var reloaded = new AtomicBoolean();
+		config.onChange("db.", (c, diff) -> {
+			if (reloaded.compareAndSet(false, true)) {
+				config.reload();
+			}
+		});
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> config.reload());
+		assertTrue(reloaded.get());
+		assertEquals("jdbc:2", config.getProperty("db.url"));
+	}
+
+	private static StableConfig config(int generation) {
+		var builder = KeyValues.builder().add("app.name", "app").add("db.url", "jdbc:" + generation);
+		if (generation > 0) {
+			builder.add("db.new", "true");
+		}
+		return new DefaultEzkvConfig("test", builder.build());
+	}
+
+	@Test
+	void testMemo() {
+		var generation = new AtomicInteger();
+		var config = new WrapperEzkvConfig(config(0), () -> config(generation.incrementAndGet() > 1 ? 1 : 0));
+		var created = new AtomicInteger();
+		var app = config.memo(Set.of("app.name"), c -> c.getProperty("app.name") + created.incrementAndGet());
+		var db = config.memo(Set.of("db.url"), c -> c.getProperty("db.url"));
+		assertEquals("app1", app.get());
+		assertEquals("app1", app.get());
+		assertEquals("jdbc:0", db.get());
+		long before = config.stableConfig().generation();
+
+		config.reload();
+		assertTrue(config.stableConfig().generation() > before);
+		assertEquals("app1", app.get());
+		assertEquals("jdbc:0", db.get());
 
+		config.reload();
+		assertEquals("app1", app.get());
+		assertEquals("jdbc:1", db.get());
+		assertEquals(1, created.get());
 	}
 
 }
@@ -2,13 +2,17 @@ package io.jstach.ezkv.dotenv;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.jspecify.annotations.Nullable;
 
+import io.jstach.ezkv.kvs.KeyValues;
 import io.jstach.ezkv.kvs.KeyValuesMedia;
+import io.jstach.ezkv.kvs.KeyValuesResource;
 
 /**
  * Dotenv (<code>.env</code>) format based on
@@ -107,6 +111,18 @@ public final class DotEnvKeyValuesMedia implements KeyValuesMedia, KeyValuesMedi
 		parse(s, consumer);
 	}
 
+	@Override
+	public void parse(ByteBuffer input, BiConsumer<String, String> consumer) {
+		parse(StandardCharsets.UTF_8.decode(input.duplicate()).toString(), consumer);
+	}
+
+	@Override
+	public KeyValues parse(KeyValuesResource source, ByteBuffer input) {
+		var b = KeyValues.builder(source);
+		parse(input, b::add);
+		return b.build();
+	}
+
 	@Override
 	public void parse(String input, BiConsumer<String, String> consumer) {
 		String lines = input.replaceAll("\\r\\n?", "\n");
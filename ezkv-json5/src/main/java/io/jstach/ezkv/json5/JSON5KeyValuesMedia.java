@@ -3,8 +3,8 @@ package io.jstach.ezkv.json5;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -67,6 +67,14 @@ import io.jstach.ezkv.kvs.Variables;
  * Because EZKV supports duplicates and order matters the data is not lost but this
  * might be confusing. Another option is to generate array indices in the keys.
  * </p>
+ * <p>
+ * With the default duplicate keys the JSON is flattened while it is parsed so large
+ * documents do not need to fit in memory and duplicate members of an object are
+ * flattened in document order. The keys and values are the same as flattening the whole
+ * document but their order is not: for <code>{x:{p:1}, y:0, x:{q:2}}</code> the key
+ * <code>x.q</code> comes after <code>y</code>. Array indices need the whole document
+ * because duplicate members of an object are treated as one array.
+ * </p>
  *
  * Assume we load a resource with the previous JSON like:
  *
@@ -355,11 +363,19 @@ public final class JSON5KeyValuesMedia implements KeyValuesMedia {
 
 		@Override
 		public void parse(String input, BiConsumer<String, String> consumer) {
-			JSONParser parser = new JSONParser(new StringReader(input), options);
+			JSONParser parser = new JSONParser(input, options);
 			parse(parser, consumer);
 		}
 
+		/*
+		 * Duplicate array keys are flattened while parsing. Array indices need the whole
+		 * tree because duplicate members of an object become one array.
+		 */
 		private void parse(JSONParser parser, BiConsumer<String, String> consumer) {
+			if (arrayKeyOption == ArrayKeyOption.DUPLICATE) {
+				parser.topValue(new Flattener(consumer));
+				return;
+			}
 			JSONValue json = parser.topValueOrNull();
 			switch (json) {
 				case JSONObject o -> {
@@ -424,6 +440,109 @@ public final class JSON5KeyValuesMedia implements KeyValuesMedia {
 			return String.valueOf(number.value());
 		}
 
+		/*
+		 * Flattens the events of the parser with one reusable key path. Every open object
+		 * or array keeps the length of its key in the path and arrays also count their
+		 * elements so memory is bounded by the nesting depth. Keys are the same as the
+		 * tree flattening but duplicate members are emitted in document order.
+		 */
+		final class Flattener implements JSONParser.Handler {
+
+			private static final int OBJECT = -1;
+
+			private final BiConsumer<String, String> consumer;
+
+			private final StringBuilder path = new StringBuilder();
+
+			private int[] lengths = new int[16];
+
+			private int[] indices = new int[16];
+
+			private int depth;
+
+			Flattener(BiConsumer<String, String> consumer) {
+				this.consumer = consumer;
+			}
+
+			@Override
+			public void startObject() {
+				push(OBJECT);
+			}
+
+			@Override
+			public void member(String name) {
+				path.setLength(lengths[depth - 1]);
+				if (!path.isEmpty()) {
+					path.append(separator);
+				}
+				path.append(name);
+			}
+
+			@Override
+			public void endObject() {
+				depth--;
+			}
+
+			@Override
+			public void startArray() {
+				push(0);
+			}
+
+			@Override
+			public void endArray() {
+				depth--;
+			}
+
+			@Override
+			public void scalar(JSONValue value) {
+				if (depth == 0) {
+					// We ignore top level literals
+					return;
+				}
+				key();
+				switch (value) {
+					case JSONString s -> consumer.accept(path.toString(), s.value());
+					case JSONBoolean b -> consumer.accept(path.toString(), String.valueOf(b.val()));
+					case JSONNumber n -> consumer.accept(path.toString(), JSON5KeyValuesParser.this.toString(n));
+					case JSONNull n -> {
+					}
+					case JSONObject o -> throw new IllegalStateException("bug");
+					case JSONArray a -> throw new IllegalStateException("bug");
+				}
+			}
+
+			private void push(int index) {
+				if (depth > 0) {
+					key();
+				}
+				if (depth == lengths.length) {
+					lengths = Arrays.copyOf(lengths, depth * 2);
+					indices = Arrays.copyOf(indices, depth * 2);
+				}
+				lengths[depth] = path.length();
+				indices[depth] = index;
+				depth++;
+			}
+
+			/*
+			 * Members already put their key in the path but elements of arrays are keyed
+			 * by the array except for a top level array which has no key.
+			 */
+			private void key() {
+				int parent = depth - 1;
+				int i = indices[parent];
+				if (i == OBJECT) {
+					return;
+				}
+				indices[parent] = i + 1;
+				path.setLength(lengths[parent]);
+				if (path.isEmpty()) {
+					path.append(i);
+				}
+			}
+
+		}
+
 	}
 
 }
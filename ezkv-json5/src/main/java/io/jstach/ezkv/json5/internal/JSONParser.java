@@ -27,15 +27,16 @@
  */
 package io.jstach.ezkv.json5.internal;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
@@ -56,7 +57,19 @@ import io.jstach.ezkv.json5.internal.JSONValue.JSONString;
  */
 public class JSONParser {
 
-	private final Reader reader;
+	private static final int BUFFER_SIZE = 8192;
+
+	/** the source or null if the buffer holds the whole source */
+	private final @Nullable Reader reader;
+
+	/** the chars read from the source */
+	private final char[] buffer;
+
+	/** the position of the next char in the buffer */
+	private int position;
+
+	/** the number of chars in the buffer */
+	private int limit;
 
 	protected final JSONParserOptions options;
 
@@ -89,7 +102,24 @@ public class JSONParser {
 	 * @since 1.1.0
 	 */
 	public JSONParser(Reader reader, JSONParserOptions options) {
-		this.reader = reader.markSupported() ? reader : new BufferedReader(reader);
+		this(reader, new char[BUFFER_SIZE], 0, options);
+	}
+
+	/**
+	 * Constructs a new JSONParser from a String. The chars of the string are parsed
+	 * without going through a reader.
+	 * @param source the source
+	 * @param options the options for parsing
+	 */
+	public JSONParser(String source, JSONParserOptions options) {
+		this(null, source.toCharArray(), source.length(), options);
+	}
+
+	private JSONParser(@Nullable Reader reader, char[] buffer, int limit, JSONParserOptions options) {
+		this.reader = reader;
+		this.buffer = buffer;
+		this.position = 0;
+		this.limit = limit;
 
 		this.options = Objects.requireNonNull(options);
 
@@ -202,6 +232,139 @@ public class JSONParser {
 		}
 	}
 
+	/**
+	 * Receives the structure and scalar values of a document while it is parsed without
+	 * building {@link JSONObject JSONObjects} or {@link JSONArray JSONArrays} so memory
+	 * is bounded by the nesting depth instead of the size of the document.
+	 * <p>
+	 * Members are reported in document order. Duplicate members are reported every time
+	 * they occur unless the duplicate behavior is {@link DuplicateBehavior#UNIQUE UNIQUE}
+	 * in which case they are an error like when parsing a tree.
+	 *
+	 * @see JSONParser#topValue(Handler)
+	 */
+	public interface Handler {
+
+		/**
+		 * Called when an object starts.
+		 */
+		void startObject();
+
+		/**
+		 * Called with the name of a member of the current object before its value.
+		 * @param name member name
+		 */
+		void member(String name);
+
+		/**
+		 * Called when the current object ends.
+		 */
+		void endObject();
+
+		/**
+		 * Called when an array starts.
+		 */
+		void startArray();
+
+		/**
+		 * Called when the current array ends.
+		 */
+		void endArray();
+
+		/**
+		 * Called with a value that is not an object or array.
+		 * @param value a {@link JSONString}, {@link JSONNumber}, {@link JSONBoolean} or
+		 * {@link JSONNull}
+		 */
+		void scalar(JSONValue value);
+
+	}
+
+	static void handleObject(JSONParser parser, Handler handler) {
+		char c;
+		String key;
+
+		if (parser.nextClean() != '{')
+			throw parser.syntaxError("A JSONObject must begin with '{'");
+
+		handler.startObject();
+
+		@Nullable
+		Set<String> keys = parser.options.duplicateBehaviour() == DuplicateBehavior.UNIQUE ? new HashSet<>() : null;
+
+		while (true) {
+			c = parser.nextClean();
+
+			switch (c) {
+				case 0:
+					throw parser.syntaxError("A JSONObject must end with '}'");
+				case '}':
+					handler.endObject();
+					return;
+				default:
+					parser.back();
+					key = parser.nextMemberName();
+			}
+
+			if (keys != null && !keys.add(key))
+				throw new JSONException("Duplicate key " + JSONStringify.quote(key));
+
+			c = parser.nextClean();
+
+			if (c != ':')
+				throw parser.syntaxError("Expected ':' after a key, got '" + c + "' instead");
+
+			handler.member(key);
+
+			parser.nextValue(handler);
+
+			c = parser.nextClean();
+
+			if (c == '}') {
+				handler.endObject();
+				return;
+			}
+
+			if (c != ',')
+				throw parser.syntaxError("Expected ',' or '}' after value, got '" + c + "' instead");
+		}
+	}
+
+	static void handleArray(JSONParser parser, Handler handler) {
+		char c;
+
+		if (parser.nextClean() != '[')
+			throw parser.syntaxError("A JSONArray must begin with '['");
+
+		handler.startArray();
+
+		while (true) {
+			c = parser.nextClean();
+
+			switch (c) {
+				case 0:
+					throw parser.syntaxError("A JSONArray must end with ']'");
+				case ']':
+					handler.endArray();
+					return;
+				default:
+					parser.back();
+			}
+
+			parser.nextValue(handler);
+
+			c = parser.nextClean();
+
+			if (c == ']') {
+				handler.endArray();
+				return;
+			}
+
+			if (c != ',')
+				throw parser.syntaxError("Expected ',' or ']' after value, got '" + c + "' instead");
+		}
+	}
+
 	private boolean more() {
 		if (back || eof)
 			return back && !eof;
@@ -224,20 +387,39 @@ public class JSONParser {
 		if (eof)
 			return 0;
 
-		int c;
+		if (position == limit && !fill())
+			return 0;
 
-		try {
-			reader.mark(1);
+		return buffer[position];
+	}
 
-			c = reader.read();
+	/*
+	 * Refills the buffer once all of it has been read. The current char is kept in a
+	 * field for back() so nothing in the buffer is needed after it has been read.
+	 */
+	private boolean fill() {
+		var reader = this.reader;
+		if (reader == null)
+			return false;
+
+		int n;
 
-			reader.reset();
+		try {
+			do {
+				n = reader.read(buffer);
+			}
+			while (n == 0);
 		}
 		catch (IOException e) {
-			throw new UncheckedIOException("Could not peek from source", e);
+			throw new UncheckedIOException("Could not read from source", e);
 		}
 
-		return c == -1 ? 0 : (char) c;
+		if (n < 0)
+			return false;
+
+		position = 0;
+		limit = n;
+		return true;
 	}
 
 	private char next() {
@@ -246,22 +428,15 @@ public class JSONParser {
 			return current;
 		}
 
-		int c;
-
-		try {
-			c = reader.read();
-		}
-		catch (IOException e) {
-			throw new UncheckedIOException("Could not read from source", e);
-		}
-
-		if (c < 0) {
+		if (position == limit && !fill()) {
 			eof = true;
 			return 0;
 		}
 
+		char c = buffer[position++];
+
 		previous = current;
-		current = (char) c;
+		current = c;
 
 		index++;
 
@@ -275,6 +450,30 @@ public class JSONParser {
 		return current;
 	}
 
+	/*
+	 * Moves past the chars of the buffer from the position to the end like calling next()
+	 * for each char. The chars must not be line terminators.
+	 */
+	private void skip(int end) {
+		int n = end - position;
+		if (n == 0)
+			return;
+
+		previous = n > 1 ? buffer[end - 2] : current;
+		current = buffer[end - 1];
+		index += n;
+		character += n;
+		position = end;
+	}
+
+	/*
+	 * Whether the chars of the buffer can be scanned in bulk which is when the current
+	 * char is not going to be read again.
+	 */
+	private boolean scannable() {
+		return !back && position < limit;
+	}
+
 	// https://262.ecma-international.org/5.1/#sec-7.3
 	private boolean isLineTerminator(char c) {
 		switch (c) {
@@ -318,17 +517,36 @@ public class JSONParser {
 
 	private void nextMultiLineComment() {
 		while (true) {
+			if (scannable()) {
+				int end = position;
+				char c;
+				while (end < limit && (c = buffer[end]) != '*' && !isLineTerminator(c))
+					end++;
+				skip(end);
+			}
+
 			char n = next();
 
 			if (n == '*' && peek() == '/') {
 				next();
 				return;
 			}
+
+			if (n == 0 && eof)
+				throw syntaxError("Unterminated multi-line comment");
 		}
 	}
 
 	private void nextSingleLineComment() {
 		while (true) {
+			if (scannable()) {
+				int end = position;
+				char c;
+				while (end < limit && (c = buffer[end]) != 0 && !isLineTerminator(c))
+					end++;
+				skip(end);
+			}
+
 			char n = next();
 
 			if (isLineTerminator(n) || n == 0)
@@ -344,6 +562,14 @@ public class JSONParser {
 	 */
 	public char nextClean() {
 		while (true) {
+			if (scannable()) {
+				int end = position;
+				char c;
+				while (end < limit && ((c = buffer[end]) == ' ' || c == '\t'))
+					end++;
+				skip(end);
+			}
+
 			if (!more()) {
 				// throw syntaxError("Unexpected end of data");
 				return 0;
@@ -377,6 +603,17 @@ public class JSONParser {
 		StringBuilder result = new StringBuilder();
 
 		while (true) {
+			if (scannable()) {
+				int start = position;
+				int end = start;
+				while (end < limit && isLiteralChar(buffer[end]))
+					end++;
+				if (end > start) {
+					result.append(buffer, start, end - start);
+					skip(end);
+				}
+			}
+
 			if (!more())
 				throw syntaxError("Unexpected end of data");
 
@@ -393,6 +630,15 @@ public class JSONParser {
 		return result.toString();
 	}
 
+	/*
+	 * Chars of literals and numbers that can be scanned in bulk. Anything else including
+	 * whitespace and comments goes through nextClean().
+	 */
+	private static boolean isLiteralChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '+'
+				|| c == '-';
+	}
+
 	private char[] unicodeEscape(boolean member, boolean part, char escapeChar) {
 
 		// String escChar = switch(escapeType) {
@@ -458,6 +704,25 @@ public class JSONParser {
 		char prev;
 
 		while (true) {
+			/*
+			 * Runs of chars that are not escapes, line terminators, surrogates or NUL are
+			 * copied in bulk. The surrogate checks only matter if the previous char is a
+			 * high surrogate.
+			 */
+			if (scannable() && !Character.isHighSurrogate(n)) {
+				int start = position;
+				int end = start;
+				char c;
+				while (end < limit && (c = buffer[end]) != quote && c != '\\' && c != 0 && !isLineTerminator(c)
+						&& !Character.isSurrogate(c))
+					end++;
+				if (end > start) {
+					result.append(buffer, start, end - start);
+					skip(end);
+					n = current;
+				}
+			}
+
 			if (!more())
 				throw syntaxError("Unexpected end of data");
 
@@ -615,6 +880,20 @@ public class JSONParser {
 		n = 0;
 
 		while (true) {
+			if (scannable() && !Character.isHighSurrogate(n)) {
+				int start = position;
+				int end = start;
+				char c;
+				while (end < limit && (((c = buffer[end]) >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_'
+						|| c == '$' || (c >= '0' && c <= '9' && (end > start || result.length() > 0))))
+					end++;
+				if (end > start) {
+					result.append(buffer, start, end - start);
+					skip(end);
+					n = current;
+				}
+			}
+
 			if (!more())
 				throw syntaxError("Unexpected end of data");
 
@@ -678,6 +957,53 @@ public class JSONParser {
 		return value;
 	}
 
+	/**
+	 * Reads the whole source as one value and reports it to the handler instead of
+	 * building a tree.
+	 * @param handler receives the value
+	 * @return {@code false} if the source has no value
+	 */
+	public boolean topValue(Handler handler) {
+		if (!nextValueOrEnd(handler)) {
+			return false;
+		}
+		char n;
+		if ((n = nextClean()) != 0) {
+			throw syntaxError("Illegal value '" + n + "'");
+		}
+		return true;
+	}
+
+	private void nextValue(Handler handler) {
+		if (!nextValueOrEnd(handler)) {
+			throw syntaxError("Unexpected end of data");
+		}
+	}
+
+	private boolean nextValueOrEnd(Handler handler) {
+		char n = nextClean();
+		switch (n) {
+			case '"', '\'':
+				handler.scalar(new JSONString(nextString(n)));
+				return true;
+			case '{':
+				back();
+				handleObject(this, handler);
+				return true;
+			case '[':
+				back();
+				handleArray(this, handler);
+				return true;
+			case 0:
+				return false;
+		}
+
+		back();
+
+		handler.scalar(nextLiteral(n));
+		return true;
+	}
+
 	/**
 	 * Reads a value from the source according to the
 	 * <a href="https://spec.json5.org/#prod-JSON5Value">JSON5 Specification</a>
@@ -700,6 +1026,13 @@ public class JSONParser {
 
 		back();
 
+		return nextLiteral(n);
+	}
+
+	/*
+	 * Reads a literal or number after the parser was moved back to its first character.
+	 */
+	private JSONValue nextLiteral(char n) {
 		final String string = nextCleanTo(",]}");
 
 		if (string.equals("null"))
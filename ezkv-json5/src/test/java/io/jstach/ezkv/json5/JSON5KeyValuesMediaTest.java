@@ -3,9 +3,13 @@ package io.jstach.ezkv.json5;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.Map;
 
 import org.jspecify.annotations.Nullable;
 import org.junit.jupiter.api.Test;
@@ -92,6 +96,33 @@ class JSON5KeyValuesMediaTest {
 		assertEquals(expected.trim(), actual.trim());
 	}
 
+	@Test
+	void testDeepNesting() {
+		int depth = 40;
+		String input = "{a:".repeat(depth) + "[[1, null, {b: [2]}], []]" + "}".repeat(depth);
+		String key = "a" + ".a".repeat(depth - 1);
+		var parser = new JSON5KeyValuesMedia().parser();
+		String expected = key + "=1\n" + key + ".b=2\n";
+		assertEquals(expected, parser.parse(input).format(KeyValuesMedia.ofProperties()));
+		var vars = Variables.builder();
+		ArrayKeyOption.ARRAY.set(vars);
+		expected = key + "[0][0]=1\n" + key + "[0][2].b[0]=2\n";
+		assertEquals(expected,
+				new JSON5KeyValuesMedia().parser(vars.build()).parse(input).format(KeyValuesMedia.ofProperties()));
+	}
+
+	@Test
+	void testDuplicateMemberOrder() {
+		String input = "{x:{p:1}, y:0, x:{q:2}}";
+		var map = new JSON5KeyValuesMedia().parser().parse(input).toMap();
+		assertEquals(Map.of("x.p", "1", "y", "0", "x.q", "2"), map);
+		assertEquals(List.of("x.p", "y", "x.q"), List.copyOf(map.keySet()));
+		var vars = Variables.builder();
+		ArrayKeyOption.ARRAY.set(vars);
+		map = new JSON5KeyValuesMedia().parser(vars.build()).parse(input).toMap();
+		assertEquals(List.of("x[0].p", "x[1].q", "y"), List.copyOf(map.keySet()));
+	}
+
 	@CartesianTest
 	void test(@CartesianTest.Enum JSON5Test test, @CartesianTest.Enum ArrayKeyOption arrayKeyOption) {
 		String input = test.input;
@@ -177,9 +208,9 @@ class JSON5KeyValuesMediaTest {
 						a=1
 						a=2
 						c.last=false
-						c.first=true
 						b=1
 						b=2
+						c.first=true
 						b=3
 						b=4
 						b=5
@@ -375,6 +406,22 @@ class JSON5KeyValuesMediaTest {
 		assertEquals(test.message, e.getMessage());
 	}
 
+	@Test
+	void testBadJsonAcrossBuffers() throws IOException {
+		String prefix = "{a:'" + "x".repeat(9000) + "',\n// " + "c".repeat(9000) + "\nb:";
+		String input = prefix + "]}";
+		String message = "Illegal value ']' at index " + prefix.length() + " [character 3 in line 3]";
+		var parser = new JSON5KeyValuesMedia().parser();
+		var e = assertThrows(JSONException.class, () -> parser.parse(input));
+		assertEquals(message, e.getMessage());
+		e = assertThrows(JSONException.class,
+				() -> parser.parse(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), (k, v) -> {
+				}));
+		assertEquals(message, e.getMessage());
+		e = assertThrows(JSONException.class, () -> parser.parse("{a: 1 /* not closed"));
+		assertEquals("Unterminated multi-line comment at index 18 [character 19 in line 1]", e.getMessage());
+	}
+
 	enum BadJSON {
 
 		JUST_CLOSE_BRACE("}", "Illegal value '}' at index 0 [character 1 in line 1]"),
@@ -0,0 +1,222 @@
+package io.jstach.ezkv.kvs;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.SequencedMap;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.jspecify.annotations.Nullable;
+
+import io.jstach.ezkv.kvs.KeyValue.DefaultMeta;
+import io.jstach.ezkv.kvs.KeyValue.Flag;
+import io.jstach.ezkv.kvs.KeyValue.Source;
+
+/*
+ * Memoized key values stored in parallel arrays. Key values from the same resource with
+ * the same flags share a descriptor of the source URI, reference and flags so per key
+ * value we only store the key, the values and the source index. The raw value and the
+ * original key are only stored if they differ from the expanded value and the key.
+ *
+ * KeyValue instances are created when iterated so iterating twice does not return the
+ * same instances but they are equal.
+ */
+final class CompactKeyValues implements ToStringableKeyValues, MemoizedKeyValues {
+
+	private final String[] keys;
+
+	private final String[] expanded;
+
+	private final @Nullable String[] raws;
+
+	private final @Nullable String[] originalKeys;
+
+	private final Descriptor[] descriptors;
+
+	private final int[] indexes;
+
+	private volatile @Nullable KeyValuesIndex index;
+
+	private volatile @Nullable SequencedMap<String, String> map;
+
+	private volatile @Nullable Long fingerprint;
+
+	private volatile @Nullable KeyValueConversions conversions;
+
+	/*
+	 * Shared by key values of the same resource and flags.
+	 */
+	private record Descriptor(URI uri, @Nullable KeyValue reference, Set<Flag> flags) {
+
+	}
+
+	private CompactKeyValues(String[] keys, String[] expanded, @Nullable String[] raws, @Nullable String[] originalKeys,
+			Descriptor[] descriptors, int[] indexes) {
+		this.keys = keys;
+		this.expanded = expanded;
+		this.raws = raws;
+		this.originalKeys = originalKeys;
+		this.descriptors = descriptors;
+		this.indexes = indexes;
+	}
+
+	static KeyValues of(KeyValues keyValues) {
+		if (keyValues instanceof CompactKeyValues c) {
+			return c;
+		}
+		var kvs = keyValues.stream().toList();
+		int size = kvs.size();
+		String[] keys = new String[size];
+		String[] expanded = new String[size];
+		@Nullable
+		String[] raws = new String[size];
+		@Nullable
+		String[] originalKeys = new String[size];
+		Descriptor[] descriptors = new Descriptor[size];
+		int[] indexes = new int[size];
+		Map<Descriptor, Descriptor> interned = new HashMap<>();
+		int i = 0;
+		for (var kv : kvs) {
+			var meta = kv.meta();
+			var source = meta.source();
+			keys[i] = kv.key();
+			expanded[i] = kv.expanded();
+			raws[i] = meta.raw().equals(kv.expanded()) ? null : meta.raw();
+			originalKeys[i] = meta.originalKey().equals(kv.key()) ? null : meta.originalKey();
+			var descriptor = new Descriptor(source.uri(), source.reference(), meta.flags());
+			descriptors[i] = interned.computeIfAbsent(descriptor, d -> d);
+			indexes[i] = source.index();
+			i++;
+		}
+		return new CompactKeyValues(keys, expanded, raws, originalKeys, descriptors, indexes);
+	}
+
+	private KeyValue keyValue(int position) {
+		String key = keys[position];
+		String value = expanded[position];
+		String raw = raws[position];
+		String originalKey = originalKeys[position];
+		var descriptor = descriptors[position];
+		int sourceIndex = indexes[position];
+		var uri = descriptor.uri();
+		var reference = descriptor.reference();
+		var source = sourceIndex == 0 && reference == null && uri.equals(Source.NULL_URI) ? Source.EMPTY
+				: new Source(uri, reference, sourceIndex);
+		var meta = new DefaultMeta(originalKey == null ? key : originalKey, raw == null ? value : raw, source,
+				descriptor.flags());
+		return new KeyValue(key, value, meta);
+	}
+
+	private KeyValuesIndex index() {
+		var index = this.index;
+		if (index == null) {
+			this.index = index = KeyValuesIndex.of(Arrays.asList(keys));
+		}
+		return index;
+	}
+
+	KeyValueConversions conversions() {
+		var conversions = this.conversions;
+		if (conversions == null) {
+			this.conversions = conversions = new KeyValueConversions(keys.length, index()::lastIndexOf, this::keyValue);
+		}
+		return conversions;
+	}
+
+	@Override
+	public Stream<KeyValue> stream() {
+		return IntStream.range(0, keys.length).mapToObj(this::keyValue);
+	}
+
+	@Override
+	public Iterator<KeyValue> iterator() {
+		return new Iterator<>() {
+
+			int position = 0;
+
+			@Override
+			public boolean hasNext() {
+				return position < keys.length;
+			}
+
+			@Override
+			public KeyValue next() {
+				if (position >= keys.length) {
+					throw new NoSuchElementException();
+				}
+				return keyValue(position++);
+			}
+
+		};
+	}
+
+	@Override
+	public KeyValues memoize() {
+		return this;
+	}
+
+	@Override
+	public KeyValues compact() {
+		return this;
+	}
+
+	@Override
+	public Optional<KeyValue> last() {
+		if (keys.length == 0) {
+			return Optional.empty();
+		}
+		return Optional.of(keyValue(keys.length - 1));
+	}
+
+	@Override
+	public @Nullable KeyValue get(String key) {
+		int position = index().lastIndexOf(key);
+		return position < 0 ? null : keyValue(position);
+	}
+
+	@Override
+	public boolean contains(String key) {
+		return index().lastIndexOf(key) >= 0;
+	}
+
+	@Override
+	public Set<String> childrenOf(String prefix) {
+		return index().childrenOf(Arrays.asList(keys), prefix, '.');
+	}
+
+	@Override
+	public SequencedMap<String, String> toMap() {
+		var map = this.map;
+		if (map == null) {
+			SequencedMap<String, String> m = new LinkedHashMap<>(index().size() * 2);
+			for (int i = 0; i < keys.length; i++) {
+				m.put(keys[i], expanded[i]);
+			}
+			this.map = map = Collections.unmodifiableSequencedMap(m);
+		}
+		return map;
+	}
+
+	@Override
+	public long fingerprint() {
+		var fingerprint = this.fingerprint;
+		if (fingerprint == null) {
+			this.fingerprint = fingerprint = KeyValuesFingerprint.of(this);
+		}
+		return fingerprint;
+	}
+
+	@Override
+	public String toString() {
+		return ToStringableKeyValues.toString(this);
+	}
+
+}
@@ -331,10 +331,34 @@ enum DefaultKeyValuesLoaderFinder implements KeyValuesLoaderFinder {
 	}
 
 	protected KeyValuesLoader loader(LoaderContext context, KeyValuesResource resource) {
-		KeyValuesLoader loader = () -> {
-			return load(context, resource);
+		return new BuiltinLoader(this, context, resource);
+	}
+
+	/*
+	 * Whether loading only depends on the resource and the environment and not the
+	 * variables or providers of the context. These loads can happen ahead of time on
+	 * another thread as the result will be the same regardless of what has been loaded
+	 * before.
+	 */
+	boolean isIsolated() {
+		return switch (this) {
+			case CLASSPATH, CLASSPATHS, FILE, JAR, JRT, VFS, VFSZIP, BUNDLE -> true;
+			default -> false;
 		};
-		return loader;
+	}
+
+	record BuiltinLoader(DefaultKeyValuesLoaderFinder finder, LoaderContext context,
+			KeyValuesResource resource) implements KeyValuesLoader {
+
+		@Override
+		public KeyValues load() throws IOException {
+			return finder.load(context, resource);
+		}
+
+		boolean isIsolated() {
+			return finder.isIsolated();
+		}
+
 	}
 
 	protected abstract KeyValues load(LoaderContext context, KeyValuesResource resource) throws IOException;
@@ -342,8 +366,27 @@ enum DefaultKeyValuesLoaderFinder implements KeyValuesLoaderFinder {
 	protected KeyValues load(LoaderContext context, KeyValuesResource resource, Parser parser) throws IOException {
 		var fileSystem = context.environment().getFileSystem();
 		var cwd = context.environment().getCWD();
-		var is = openURI(resource.uri(), context.environment().getResourceLoader(), fileSystem, cwd);
-		return parser.parse(resource, is);
+		var cache = ResourceCache.of(context);
+		var uri = resource.uri();
+		var path = "classpath".equals(uri.getScheme()) ? null : filePathOrNull(uri, fileSystem, cwd);
+		if (path != null) {
+			/*
+			 * We track the file before opening so that missing files can be watched as
+			 * well.
+			 */
+			DefaultLoaderContext.trackFile(context, path);
+			if (cache.isEnabled()) {
+				return cache.parseFile(resource, parser, path);
+			}
+			return FileBuffers.parse(resource, parser, path);
+		}
+		var is = openURI(uri, context.environment().getResourceLoader(), fileSystem, cwd);
+		if (cache.isEnabled()) {
+			return cache.parseContent(resource, parser, is);
+		}
+		try (is) {
+			return parser.parse(resource, is);
+		}
 	}
 
 	boolean matches(KeyValuesResource resource, KeyValuesEnvironment environment) {
@@ -466,6 +509,10 @@ enum DefaultKeyValuesLoaderFinder implements KeyValuesLoaderFinder {
 			throws MalformedURLException, IOException {
 		URL url = resource.uri().toURL();
 		var parser = context.requireParser(resource);
+		var cache = ResourceCache.of(context);
+		if (cache.isEnabled()) {
+			return cache.parseContent(resource, parser, url.openStream());
+		}
 		try (var is = url.openStream()) {
 			return parser.parse(resource, is);
 		}
@@ -513,7 +560,7 @@ enum DefaultKeyValuesLoaderFinder implements KeyValuesLoaderFinder {
 			logger.debug("Using key specified in URI path. key: " + path + " resource: " + resource);
 		}
 
-		var kvResource = kvs.filter(kv -> kv.key().equals(path)).last().orElse(null);
+		var kvResource = kvs.get(path);
 		if (kvResource == null) {
 			throw new FileNotFoundException(
 					"Key not found specified in URI path. key: '" + path + "' resource: " + resource);
@@ -9,10 +9,9 @@ import java.io.Reader;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.Properties;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
@@ -31,6 +30,16 @@ enum DefaultKeyValuesMedia implements KeyValuesMedia, Parser, Formatter {
 			PropertiesParser.readProperties(new InputStreamReader(is, StandardCharsets.UTF_8), consumer);
 		}
 
+		@Override
+		public void parse(String input, BiConsumer<String, String> consumer) {
+			PropertiesLexer.parse(input, consumer);
+		}
+
+		@Override
+		public void parse(ByteBuffer input, BiConsumer<String, String> consumer) {
+			PropertiesLexer.parse(input, consumer);
+		}
+
 		@Override
 		public void format(Appendable appendable, KeyValues kvs) throws IOException {
 			for (var kv : kvs) {
@@ -76,6 +85,11 @@ enum DefaultKeyValuesMedia implements KeyValuesMedia, Parser, Formatter {
 		public void parse(String input, BiConsumer<String, String> consumer) {
 			parseUriQuery(input, true, consumer);
 		}
+
+		@Override
+		public void parse(ByteBuffer input, BiConsumer<String, String> consumer) {
+			parseUriQuery(StandardCharsets.UTF_8.decode(input.duplicate()).toString(), true, consumer);
+		}
 	}
 
 	;
@@ -94,6 +108,13 @@ enum DefaultKeyValuesMedia implements KeyValuesMedia, Parser, Formatter {
 		return BUILTIN_ORDER_START + ordinal();
 	}
 
+	@Override
+	public KeyValues parse(KeyValuesResource source, ByteBuffer input) throws IOException {
+		var b = KeyValues.builder(source);
+		parse(input, b::add);
+		return b.build();
+	}
+
 	@Override
 	public String getMediaType() {
 		return mediaType;
@@ -173,9 +194,7 @@ final class PropertiesParser {
 	 * @throws IOException on read failure
 	 */
 	static void readProperties(Reader reader, BiConsumer<String, String> consumer) throws IOException {
-		Properties bp = prepareProperties(consumer);
-		bp.load(reader);
-
+		PropertiesLexer.parse(reader, consumer);
 	}
 
 	static void writeProperty(Appendable sb, String key, String value) throws IOException {
@@ -185,24 +204,6 @@ final class PropertiesParser {
 		sb.append('\n');
 	}
 
-	private static Properties prepareProperties(BiConsumer<String, String> consumer) throws IOException {
-
-		// Hack to use properties class to load but our map for preserved order
-		@SuppressWarnings({ "serial", "nullness" })
-		Properties bp = new Properties() {
-			@Override
-			@SuppressWarnings({ "nullness", "keyfor", "UnsynchronizedOverridesSynchronized" }) // checker
-																								// bug
-			public @Nullable Object put(Object key, Object value) {
-				Objects.requireNonNull(key);
-				Objects.requireNonNull(value);
-				consumer.accept((String) key, (String) value);
-				return null;
-			}
-		};
-		return bp;
-	}
-
 	/*
 	 * This is inspired by the JDK
 	 */
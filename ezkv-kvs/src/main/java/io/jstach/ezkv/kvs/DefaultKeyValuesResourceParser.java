@@ -2,7 +2,9 @@ package io.jstach.ezkv.kvs;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
@@ -84,11 +86,14 @@ enum DefaultKeyValuesResourceParser implements KeyValuesResourceParser {
 
 	@Override
 	public KeyValues filterResources(KeyValues keyValues) {
-		return keyValues.filter(this::isResourceKey);
+		return partition(keyValues).keyValues();
 	}
 
 	@Override
 	public boolean isResourceKey(KeyValue kv) {
+		if (!kv.key().startsWith(prefix())) {
+			return true;
+		}
 		try {
 			return resourceKeyOrNull(kv) == null;
 		}
@@ -102,28 +107,83 @@ enum DefaultKeyValuesResourceParser implements KeyValuesResourceParser {
 	@Override
 	public List<? extends InternalKeyValuesResource> parseResources(KeyValues keyValues, Set<LoadFlag> loadFlags)
 			throws KeyValuesResourceParserException {
-		List<InternalKeyValuesResource> resources = new ArrayList<>();
+		return partition(keyValues).resources(loadFlags);
+	}
+
+	@Override
+	public Partition partition(KeyValues keyValues) {
+		List<KeyValue> data = new ArrayList<>();
+		List<ResourceKeyValue> loads = new ArrayList<>();
+		Map<String, List<ResourceKeyValue>> resourceKeys = new HashMap<>();
+		String loadPrefix = prefix(ResourceKey.LOAD.formatAlias());
+		KeyValuesResourceParserException error = null;
+		boolean badLoad = false;
 		for (var kv : keyValues) {
-			var r = parseResourceOrNull(kv, keyValues, loadFlags);
-			if (r != null) {
-				resources.add(r);
+			if (!kv.key().startsWith(prefix())) {
+				data.add(kv);
+				continue;
+			}
+			ResourceKeyValue rkv;
+			try {
+				rkv = resourceKeyOrNull(kv);
+			}
+			catch (KeyValuesResourceParserException e) {
+				/*
+				 * Bad resource keys are kept and only fail parsing if there is a resource
+				 * to load.
+				 */
+				if (error == null) {
+					error = e;
+				}
+				badLoad |= kv.key().startsWith(loadPrefix);
+				data.add(kv);
+				continue;
+			}
+			if (rkv == null) {
+				data.add(kv);
+				continue;
+			}
+			if (rkv.type() == ResourceKey.LOAD) {
+				loads.add(rkv);
 			}
+			resourceKeys.computeIfAbsent(rkv.resourceName(), k -> new ArrayList<>()).add(rkv);
 		}
-		return List.copyOf(resources);
+		KeyValues dataKeyValues = resourceKeys.isEmpty() && error == null ? keyValues : KeyValues.copyOf(data);
+		return new DefaultPartition(this, dataKeyValues, loads, resourceKeys,
+				badLoad || !loads.isEmpty() ? error : null);
 	}
 
-	// Parsing Resource
-
-	private void parseKeyValues(KeyValuesResource.Builder builder, LoadResource resource, KeyValues keyValues)
-			throws KeyValuesResourceParserException {
-		for (var kv : keyValues) {
-			var rkv = resourceKeyOrNull(kv);
-			if (rkv != null) {
-				if (resource.name().equals(rkv.resourceName())) {
-					parseResourceKey(builder, rkv);
+	/*
+	 * Resource keys grouped by resource name so that building every resource only visits
+	 * its own keys.
+	 */
+	private record DefaultPartition(DefaultKeyValuesResourceParser parser, KeyValues keyValues,
+			List<ResourceKeyValue> loads, Map<String, List<ResourceKeyValue>> resourceKeys,
+			@Nullable KeyValuesResourceParserException error) implements Partition {
+
+		@Override
+		public List<? extends InternalKeyValuesResource> resources(Set<LoadFlag> loadFlags)
+				throws KeyValuesResourceParserException {
+			var error = this.error;
+			if (error != null) {
+				throw error;
+			}
+			List<InternalKeyValuesResource> resources = new ArrayList<>(loads.size());
+			for (var load : loads) {
+				var keyValue = load.keyValue();
+				var uri = URI.create(keyValue.expanded());
+				var builder = new KeyValuesResource.Builder(uri, load.resourceName());
+				builder.flags.addAll(loadFlags);
+				parser.parseURI(builder, uri);
+				for (var rkv : resourceKeys.getOrDefault(load.resourceName(), List.of())) {
+					parser.parseResourceKey(builder, rkv);
 				}
+				builder.reference = keyValue;
+				resources.add(builder.buildNormalized());
 			}
+			return List.copyOf(resources);
 		}
+
 	}
 
 	private void parseResourceKey(KeyValuesResource.Builder builder, ResourceKeyValue rkv)
@@ -158,20 +218,6 @@ enum DefaultKeyValuesResourceParser implements KeyValuesResourceParser {
 		}
 	}
 
-	private @Nullable InternalKeyValuesResource parseResourceOrNull(KeyValue keyValue, KeyValues keyValues,
-			Set<LoadFlag> loadFlags) throws KeyValuesResourceParserException {
-		var resource = parseLoadOrNull(keyValue);
-		if (resource == null) {
-			return null;
-		}
-		var builder = new KeyValuesResource.Builder(resource.uri(), resource.name());
-		builder.flags.addAll(loadFlags);
-		parseURI(builder, resource.uri());
-		parseKeyValues(builder, resource, keyValues);
-		builder.reference = keyValue;
-		return builder.buildNormalized();
-	}
-
 	@Override
 	public InternalKeyValuesResource normalizeResource(KeyValuesResource resource)
 			throws KeyValuesResourceParserException {
@@ -213,25 +259,6 @@ enum DefaultKeyValuesResourceParser implements KeyValuesResourceParser {
 		return builder.buildNormalized();
 	}
 
-	private @Nullable LoadResource parseLoadOrNull(KeyValue keyValue) throws KeyValuesResourceParserException {
-		String key = keyValue.key();
-		String prefix = prefix(ResourceKey.LOAD.keys().getFirst());
-		if (!key.startsWith(prefix)) {
-			return null;
-		}
-		String name = key.substring(prefix.length());
-
-		try {
-			name = KeyValuesSource.validateName(name);
-		}
-		catch (KeyValuesResourceNameException e) {
-			throw new KeyValuesResourceParserException(
-					"Key Value has a malformed name for load resource. keyValue=" + keyValue, e);
-		}
-		var uri = URI.create(keyValue.expanded());
-		return new LoadResource(name, uri, keyValue);
-	}
-
 	private void parseURI(KeyValuesResource.Builder builder, URI uri) throws KeyValuesResourceParserException {
 		if (uri.getQuery() == null) {
 			return;
@@ -454,9 +481,6 @@ enum DefaultKeyValuesResourceParser implements KeyValuesResourceParser {
 
 	}
 
-	private record LoadResource(String name, URI uri, KeyValue keyValue) {
-	}
-
 	@SuppressWarnings({ "ImmutableEnumChecker" })
 	private enum ResourceKey {
 
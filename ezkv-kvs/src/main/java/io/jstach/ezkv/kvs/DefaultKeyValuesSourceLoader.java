@@ -2,24 +2,37 @@ package io.jstach.ezkv.kvs;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UncheckedIOException;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.jspecify.annotations.Nullable;
 
+import io.jstach.ezkv.kvs.DefaultKeyValuesLoaderFinder.BuiltinLoader;
 import io.jstach.ezkv.kvs.KeyValue.Flag;
+import io.jstach.ezkv.kvs.KeyValuesInterpolator.Occurrence;
 import io.jstach.ezkv.kvs.KeyValuesServiceProvider.KeyValuesFilter.FilterContext;
+import io.jstach.ezkv.kvs.KeyValuesServiceProvider.KeyValuesLoaderFinder.LoaderContext;
 
 /*
  * The predominate chain loading happens here!
@@ -30,11 +43,27 @@ class DefaultKeyValuesSourceLoader implements KeyValuesSourceLoader {
 
 	private final KeyValuesSystem system;
 
+	/*
+	 * The variables used while loading are the added keys followed by the key values of
+	 * NO_ADD resources followed by the root variables.
+	 */
 	private final Variables variables;
 
 	private final Map<String, String> variableStore;
 
-	private final Map<String, KeyValue> keys = new LinkedHashMap<>();
+	/*
+	 * The last key value of every added key.
+	 */
+	private final Map<String, Occurrence> keys = new LinkedHashMap<>();
+
+	private final Variables externalVariables;
+
+	/*
+	 * Resolves keys that are used as variables. Instead of expanding every added key each
+	 * time a resource is added we only resolve keys that are actually used and start over
+	 * when more key values are added.
+	 */
+	private @Nullable KeyValuesInterpolator keyInterpolator;
 
 	private final List<Node> sourcesStack = new ArrayList<>();
 
@@ -44,6 +73,17 @@ class DefaultKeyValuesSourceLoader implements KeyValuesSourceLoader {
 
 	private final KeyValuesEnvironment.Logger logger;
 
+	private final @Nullable Executor executor;
+
+	private final ResourceCache cache;
+
+	private final Consumer<Path> fileTracker;
+
+	/*
+	 * Resources that are being fetched ahead of time keyed by node identity.
+	 */
+	private final Map<Node, Future<KeyValues>> prefetches = new IdentityHashMap<>();
+
 	/*
 	 * TODO We use a node to wrap a source to represent each branch to fully recover the
 	 * load path but we probably do not need to do this as each kv has the source.
@@ -59,34 +99,68 @@ class DefaultKeyValuesSourceLoader implements KeyValuesSourceLoader {
 	}
 
 	static KeyValuesLoader of(KeyValuesSystem system, Variables rootVariables,
-			List<? extends NamedKeyValuesSource> resources) {
-		record ReusableLoader(KeyValuesSystem system, Variables rootVariables,
-				List<? extends NamedKeyValuesSource> resources) implements KeyValuesLoader {
+			List<? extends NamedKeyValuesSource> resources, boolean concurrent, @Nullable Executor executor,
+			ResourceCache cache) {
+		return new ReusableLoader(system, rootVariables, resources, concurrent, executor, cache);
+	}
 
-			@Override
-			public KeyValues load() throws IOException {
-				try {
-					return new DefaultKeyValuesSourceLoader(system, rootVariables).load(resources);
-				}
-				catch (RuntimeException e) {
-					system.environment().getLogger().fatal(e);
-					throw e;
-				}
-				catch (IOException e) {
-					system.environment().getLogger().fatal(e);
-					throw e;
+	/*
+	 * The resource cache lives as long as this loader so that loading again only parses
+	 * resources that have changed.
+	 */
+	record ReusableLoader(KeyValuesSystem system, Variables rootVariables,
+			List<? extends NamedKeyValuesSource> resources, boolean concurrent, @Nullable Executor executor,
+			ResourceCache cache) implements KeyValuesLoader {
+
+		@Override
+		public KeyValues load() throws IOException {
+			return load(path -> {
+			});
+		}
+
+		/*
+		 * The file tracker is called with every file path the loader tries to open
+		 * including ones that are missing. It maybe called from multiple threads.
+		 */
+		KeyValues load(Consumer<Path> fileTracker) throws IOException {
+			var executor = this.executor;
+			if (executor == null && concurrent) {
+				var factory = Thread.ofVirtual().name("ezkv-load-", 0).factory();
+				try (var virtualExecutor = Executors.newThreadPerTaskExecutor(factory)) {
+					return load(virtualExecutor, fileTracker);
 				}
 			}
+			return load(executor, fileTracker);
+		}
+
+		private KeyValues load(@Nullable Executor executor, Consumer<Path> fileTracker) throws IOException {
+			try {
+				return new DefaultKeyValuesSourceLoader(system, rootVariables, executor, cache, fileTracker)
+					.load(resources);
+			}
+			catch (RuntimeException e) {
+				system.environment().getLogger().fatal(e);
+				throw e;
+			}
+			catch (IOException e) {
+				system.environment().getLogger().fatal(e);
+				throw e;
+			}
 		}
-		return new ReusableLoader(system, rootVariables, resources);
+
 	}
 
-	private DefaultKeyValuesSourceLoader(KeyValuesSystem system, Variables rootVariables) {
+	private DefaultKeyValuesSourceLoader(KeyValuesSystem system, Variables rootVariables, @Nullable Executor executor,
+			ResourceCache cache, Consumer<Path> fileTracker) {
 		super();
 		this.system = system;
 		this.variableStore = new LinkedHashMap<>();
-		this.variables = Variables.builder().add(variableStore).add(rootVariables).build();
+		this.externalVariables = Variables.builder().add(variableStore).add(rootVariables).build();
+		this.variables = Variables.builder().add(this::keyVariable).add(externalVariables).build();
 		this.logger = system.environment().getLogger();
+		this.executor = executor;
+		this.cache = cache;
+		this.fileTracker = fileTracker;
 	}
 
 	@Override
@@ -94,14 +168,24 @@ class DefaultKeyValuesSourceLoader implements KeyValuesSourceLoader {
 		if (sources.isEmpty()) {
 			return KeyValues.empty();
 		}
+		try {
+			return loadSources(sources);
+		}
+		finally {
+			for (var prefetch : prefetches.values()) {
+				prefetch.cancel(true);
+			}
+			prefetches.clear();
+		}
+	}
 
+	private KeyValues loadSources(List<? extends NamedKeyValuesSource> sources) throws IOException {
 		var fs = this.sourcesStack;
-
-		KeyValues keyValues = () -> keyValuesStore.stream();
 		{
 			List<Node> nodes = sources.stream().map(s -> new Node(s, null)).toList();
 			validateNames(nodes);
 			fs.addAll(0, nodes);
+			prefetch(nodes);
 		}
 		for (; !fs.isEmpty();) {
 			// pop
@@ -112,11 +196,14 @@ class DefaultKeyValuesSourceLoader implements KeyValuesSourceLoader {
 			// KeyValues kvs;
 
 			Set<LoadFlag> flags = Set.of();
+			boolean expanded = false;
 			var kvs = switch (resource) {
 				case KeyValuesResource r -> {
 					InternalKeyValuesResource normalizedResource = normalizeResource(r, node);
 					flags = normalizedResource.loadFlags();
-					yield loadAndFilter(node, normalizedResource, flags);
+					var loaded = loadAndFilter(node, normalizedResource, flags);
+					expanded = loaded.expanded();
+					yield loaded.keyValues();
 				}
 				case NamedKeyValues _kvs -> _kvs.keyValues();
 			};
@@ -125,13 +212,14 @@ class DefaultKeyValuesSourceLoader implements KeyValuesSourceLoader {
 			if (!kvFlags.isEmpty()) {
 				kvs = kvs.map(kv -> kv.addFlags(kvFlags));
 			}
-			if (!LoadFlag.NO_INTERPOLATE.isSet(flags)) {
+			if (!expanded && !LoadFlag.NO_INTERPOLATE.isSet(flags)) {
 				// technically this would be a noop
 				// anyway because the kv have the
 				// no interpolate flag.
 				kvs = kvs.expand(variables);
 			}
-			List<? extends InternalKeyValuesResource> foundResources = parseResources(kvs, node, flags);
+			var partition = resourceParser.partition(kvs);
+			List<? extends InternalKeyValuesResource> foundResources = parseResources(partition, node, flags);
 			if (LoadFlag.NO_LOAD_CHILDREN.isSet(flags) && !foundResources.isEmpty()) {
 				foundResources = List.of();
 				logger.warn("Resource is not allowed to load children but had load keys (ignoring). resource: "
@@ -141,14 +229,15 @@ class DefaultKeyValuesSourceLoader implements KeyValuesSourceLoader {
 			validateNames(nodes);
 			// push
 			fs.addAll(0, nodes);
-			kvs = resourceParser.filterResources(kvs);
+			prefetch(nodes);
+			kvs = partition.keyValues();
 			boolean added = false;
 			if (!LoadFlag.NO_ADD.isSet(flags)) {
 				for (var kv : kvs) {
 					if (LoadFlag.NO_REPLACE.isSet(flags) && keys.containsKey(kv.key())) {
 						continue;
 					}
-					keys.put(kv.key(), kv);
+					keys.put(kv.key(), new Occurrence(kv, keys.get(kv.key()), keyValuesStore.size()));
 					keyValuesStore.add(kv);
 					added = true;
 				}
@@ -159,26 +248,134 @@ class DefaultKeyValuesSourceLoader implements KeyValuesSourceLoader {
 			}
 			else {
 				variableStore.putAll(kvs.interpolate(variables));
+				added = true;
 			}
 			/*
-			 * We interpolate the entire list again. Every time a resource is loaded so
-			 * that the next resource has the previous resources keys as variables for
-			 * interpolation.
+			 * The next resource has the previous resources keys as variables for
+			 * interpolation so the keys need to be expanded again when used.
 			 */
-			variableStore.putAll(keyValues.interpolate(variables));
+			if (added) {
+				keyInterpolator = null;
+			}
 		}
-		return keyValues.expand(variables).memoize();
+		/*
+		 * Only now do we expand all the key values and only once. Unchanged key values
+		 * are not copied and the result can be expanded again with changed variables.
+		 */
+		return KeyValuesInterpolator.interpolate(new ListKeyValues(keyValuesStore), externalVariables, false,
+				executor != null);
 
 	}
 
-	private List<? extends InternalKeyValuesResource> parseResources(KeyValues kvs, Node node, Set<LoadFlag> loadFlags)
+	private @Nullable String keyVariable(String key) {
+		var occurrence = keys.get(key);
+		if (occurrence == null) {
+			return null;
+		}
+		var interpolator = keyInterpolator;
+		if (interpolator == null) {
+			interpolator = keyInterpolator = KeyValuesInterpolator.of(keys::get, externalVariables);
+		}
+		return interpolator.resolve(occurrence);
+	}
+
+	/*
+	 * When concurrent loading is enabled sibling resources are fetched and parsed ahead
+	 * of time if the loading of the resource does not depend on variables (isolated). The
+	 * results are consumed in the original stack order so that interpolation, filtering,
+	 * merging and logging are exactly the same as sequential loading.
+	 */
+	private void prefetch(List<Node> nodes) {
+		var executor = this.executor;
+		if (executor == null || nodes.size() < 2) {
+			return;
+		}
+		for (var node : nodes) {
+			if (!(node.current instanceof KeyValuesResource r)) {
+				continue;
+			}
+			InternalKeyValuesResource resource;
+			try {
+				resource = resourceParser.normalizeResource(r);
+			}
+			catch (KeyValuesResourceParserException e) {
+				// The error will be reported when the node is popped.
+				continue;
+			}
+			if (LoadFlag.NO_RELOAD.isSet(resource.loadFlags()) && cache.get(resource) != null) {
+				continue;
+			}
+			var context = DefaultLoaderContext.of(system, variables, resourceParser, cache, fileTracker);
+			var loader = system.loaderFinder().findLoader(context, resource).orElse(null);
+			if (loader instanceof BuiltinLoader b && b.isIsolated()) {
+				var task = new FutureTask<KeyValues>(() -> b.load().memoize());
+				try {
+					executor.execute(task);
+				}
+				catch (RejectedExecutionException e) {
+					// We just load it sequentially.
+					continue;
+				}
+				prefetches.put(node, task);
+			}
+		}
+	}
+
+	private KeyValues fetch(Node node, LoaderContext context, InternalKeyValuesResource resource) throws IOException {
+		if (LoadFlag.NO_RELOAD.isSet(resource.loadFlags())) {
+			var cached = cache.get(resource);
+			if (cached != null) {
+				return cached;
+			}
+			var kvs = fetchOrPrefetched(node, context, resource);
+			return cache.put(resource, ResourceCache.Fingerprint.Unconditional.NO_RELOAD, kvs);
+		}
+		return fetchOrPrefetched(node, context, resource);
+	}
+
+	private KeyValues fetchOrPrefetched(Node node, LoaderContext context, InternalKeyValuesResource resource)
 			throws IOException {
+		var prefetch = prefetches.remove(node);
+		if (prefetch == null) {
+			return system.loaderFinder()
+				.findLoader(context, resource)
+				.orElseThrow(() -> new IOException("Resource Loader not found. resource: " + describe(node)))
+				.load();
+		}
+		try {
+			return prefetch.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while fetching resource: " + describe(node));
+		}
+		catch (ExecutionException e) {
+			/*
+			 * We rethrow the original exception so that it is handled the same as if it
+			 * was loaded sequentially.
+			 */
+			var cause = e.getCause();
+			if (cause instanceof IOException ioe) {
+				throw ioe;
+			}
+			else if (cause instanceof RuntimeException re) {
+				throw re;
+			}
+			else if (cause instanceof Error error) {
+				throw error;
+			}
+			throw new IOException("Resource fetch failed. resource: " + describe(node), e);
+		}
+	}
+
+	private List<? extends InternalKeyValuesResource> parseResources(KeyValuesResourceParser.Partition partition,
+			Node node, Set<LoadFlag> loadFlags) throws IOException {
 		List<? extends InternalKeyValuesResource> foundResources;
 		try {
 			if (!LoadFlag.PROPAGATE.isSet(loadFlags)) {
 				loadFlags = Set.of();
 			}
-			foundResources = resourceParser.parseResources(kvs, loadFlags);
+			foundResources = partition.resources(loadFlags);
 		}
 		catch (KeyValuesResourceParserException e) {
 			throw new IOException("Resource has an invalid resource key.  resource: " + describe(node), e);
@@ -218,23 +415,27 @@ class DefaultKeyValuesSourceLoader implements KeyValuesSourceLoader {
 		KeyValuesSource.fullDescribe(sb, node.current);
 	}
 
+	/*
+	 * Expanded is true if the key values were interpolated and not changed by filters
+	 * after which expanding again with the same variables would not change anything.
+	 */
+	record Loaded(KeyValues keyValues, boolean expanded) {
+	}
+
 	/*
 	 * The load here will also apply filtering.
 	 */
-	KeyValues loadAndFilter(Node node, InternalKeyValuesResource resource, Set<LoadFlag> flags)
+	Loaded loadAndFilter(Node node, InternalKeyValuesResource resource, Set<LoadFlag> flags)
 			throws IOException, FileNotFoundException {
 		if (!resource.normalized()) {
 			throw new IllegalStateException("bug");
 		}
 		logger.load(resource);
-		var context = DefaultLoaderContext.of(system, variables, resourceParser);
+		var context = DefaultLoaderContext.of(system, variables, resourceParser, cache, fileTracker);
 		try {
 			KeyValues kvs;
 			try {
-				var kvsNotInterpolated = system.loaderFinder()
-					.findLoader(context, resource)
-					.orElseThrow(() -> new IOException("Resource Loader not found. resource: " + describe(node)))
-					.load();
+				var kvsNotInterpolated = fetch(node, context, resource);
 				/*
 				 * We now interpolate locally.
 				 */
@@ -244,7 +445,8 @@ class DefaultKeyValuesSourceLoader implements KeyValuesSourceLoader {
 				throw e.getCause();
 			}
 			logger.loaded(resource);
-			return filter(resource, kvs, node, LoadFlag.NO_FILTER_RESOURCE_KEYS.isSet(flags));
+			var filtered = filter(resource, kvs, node, LoadFlag.NO_FILTER_RESOURCE_KEYS.isSet(flags));
+			return new Loaded(filtered, filtered == kvs);
 		}
 		catch (KeyValuesMediaException e) {
 			throw new IOException("Resource has media errors. resource: " + describe(node) + ". " + e.getMessage(), e);
@@ -255,7 +457,7 @@ class DefaultKeyValuesSourceLoader implements KeyValuesSourceLoader {
 		catch (FileNotFoundException | NoSuchFileException e) {
 			logger.missing(resource, e);
 			if (LoadFlag.NO_REQUIRE.isSet(flags)) {
-				return KeyValues.empty();
+				return new Loaded(KeyValues.empty(), true);
 			}
 			throw new IOException("Resource not found. resource: " + describe(node), e);
 		}
@@ -363,7 +565,7 @@ enum LoadFlag {
 	NO_FILTER_RESOURCE_KEYS(KeyValuesResource.FLAG_NO_FILTER_RESOURCE_KEYS), // Done
 
 	/**
-	 * TODO
+	 * Reuses the key values from a previous load of the same loader.
 	 */
 	NO_RELOAD(KeyValuesResource.FLAG_NO_RELOAD),
 
@@ -0,0 +1,94 @@
+package io.jstach.ezkv.kvs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.jspecify.annotations.Nullable;
+
+import io.jstach.ezkv.kvs.KeyValuesMedia.Parser;
+
+/*
+ * Feeds small files to the byte buffer entry point of parsers. They are read into a
+ * direct buffer borrowed from a small pool so that their raw bytes are never copied onto
+ * the heap. Larger files are streamed to the parser like before so that neither their
+ * bytes nor their chars are ever all on the heap.
+ *
+ * Files are not memory mapped. A mapped file that is truncated while it is parsed, which
+ * the watcher makes likely, fails with an InternalError instead of an IOException and
+ * the mapping is only released when it is garbage collected which keeps the file locked
+ * on Windows.
+ *
+ * A borrowed buffer is returned to the pool after the parser returns which is why
+ * parsers must not keep the buffer.
+ *
+ * The pool is a bounded blocking queue which uses a lock instead of synchronized
+ * because files can be loaded on virtual threads. Borrowing never waits. If the pool is
+ * empty a new buffer is allocated and it is dropped if the pool is full when returned.
+ */
+final class FileBuffers {
+
+	/*
+	 * Files smaller than this are read into a pooled buffer.
+	 */
+	static final int POOLED_SIZE = 64 * 1024;
+
+	private static final int MAX_POOLED = 8;
+
+	private static final ArrayBlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<>(MAX_POOLED);
+
+	private FileBuffers() {
+	}
+
+	static KeyValues parse(KeyValuesResource resource, Parser parser, Path path) throws IOException {
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < POOLED_SIZE) {
+				var buffer = borrow();
+				try {
+					if (readFully(channel, buffer)) {
+						return parser.parse(resource, buffer.flip());
+					}
+				}
+				finally {
+					giveBack(buffer);
+				}
+				/*
+				 * A small file that grew while it was read is read again from the start.
+				 */
+				channel.position(0);
+			}
+			return parser.parse(resource, Channels.newInputStream(channel));
+		}
+	}
+
+	/*
+	 * Returns false if the file does not fit in the buffer.
+	 */
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				return true;
+			}
+		}
+		return channel.read(ByteBuffer.allocate(1)) < 0;
+	}
+
+	private static ByteBuffer borrow() {
+		@Nullable
+		ByteBuffer buffer = pool.poll();
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(POOLED_SIZE);
+		}
+		return buffer;
+	}
+
+	private static void giveBack(ByteBuffer buffer) {
+		pool.offer(buffer.clear());
+	}
+
+}
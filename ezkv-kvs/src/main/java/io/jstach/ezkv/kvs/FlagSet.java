@@ -2,6 +2,7 @@ package io.jstach.ezkv.kvs;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
@@ -62,7 +63,10 @@ final class FlagSet<E extends Enum<E>> implements Set<E> {
 
 	@Override
 	public Iterator<E> iterator() {
-		return set.iterator();
+		/*
+		 * Flag sets are shared so the iterator must not remove.
+		 */
+		return Collections.unmodifiableSet(set).iterator();
 	}
 
 	@Override
@@ -92,7 +96,7 @@ final class FlagSet<E extends Enum<E>> implements Set<E> {
 
 	@Override
 	public boolean removeAll(Collection<?> c) {
-		return set.removeAll(c);
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
@@ -123,7 +127,7 @@ final class FlagSet<E extends Enum<E>> implements Set<E> {
 
 	@Override
 	public boolean retainAll(Collection<?> c) {
-		return set.retainAll(c);
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
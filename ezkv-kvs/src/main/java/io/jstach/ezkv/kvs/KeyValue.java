@@ -1,8 +1,10 @@
 package io.jstach.ezkv.kvs;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Function;
@@ -138,12 +140,12 @@ public record KeyValue(String key, String expanded, Meta meta) {
 	}
 
 	/**
-	 * Because EZKV reinterpolates all loaded key values on each resource load to support
-	 * chaining the expanded value will changed based on {@link #raw()}. Thus if a filter
-	 * or something similar would like to change a value without changing the raw loaded
-	 * value this method should be used. Ideally filters should not add values to be
-	 * interpolated as that would be confusing and this call prevents that by setting the
-	 * {@link Flag#NO_INTERPOLATION}.
+	 * Because EZKV interpolates all loaded key values again once every resource is loaded
+	 * to support chaining the expanded value will changed based on {@link #raw()}. Thus
+	 * if a filter or something similar would like to change a value without changing the
+	 * raw loaded value this method should be used. Ideally filters should not add values
+	 * to be interpolated as that would be confusing and this call prevents that by
+	 * setting the {@link Flag#NO_INTERPOLATION}.
 	 * @param value expanded value that will not be replaced by interpolation.
 	 * @return a new key value.
 	 */
@@ -177,6 +179,9 @@ public record KeyValue(String key, String expanded, Meta meta) {
 	 * @return a new {@code KeyValue} with the added flags.
 	 */
 	public KeyValue addFlags(Collection<Flag> flagsCol) {
+		if (flags().containsAll(flagsCol)) {
+			return this;
+		}
 		var flags = EnumSet.noneOf(Flag.class);
 		flags.addAll(flags());
 		flags.addAll(flagsCol);
@@ -260,14 +265,43 @@ public record KeyValue(String key, String expanded, Meta meta) {
 	}
 
 	record DefaultMeta(String originalKey, String raw, Source source, Set<Flag> flags) implements Meta {
+
+		/*
+		 * There are only a few combinations of flags so every key value with the same
+		 * flags shares the same flag set.
+		 */
+		private static final List<FlagSet<Flag>> FLAG_SETS = flagSets();
+
 		public DefaultMeta {
-			flags = FlagSet.copyOf(flags, Flag.class);
+			flags = internFlags(flags);
 		}
 
 		@Override
 		public Meta withFlags(Collection<Flag> flags) {
-			var flagsCopy = FlagSet.copyOf(flags, Flag.class);
-			return new DefaultMeta(originalKey, raw, source, flagsCopy);
+			return new DefaultMeta(originalKey, raw, source, internFlags(flags));
+		}
+
+		static FlagSet<Flag> internFlags(Collection<Flag> flags) {
+			int mask = 0;
+			for (var flag : flags) {
+				mask |= 1 << flag.ordinal();
+			}
+			return FLAG_SETS.get(mask);
+		}
+
+		private static List<FlagSet<Flag>> flagSets() {
+			var flags = Flag.values();
+			List<FlagSet<Flag>> flagSets = new ArrayList<>(1 << flags.length);
+			for (int mask = 0; mask < 1 << flags.length; mask++) {
+				var set = EnumSet.noneOf(Flag.class);
+				for (var flag : flags) {
+					if ((mask & (1 << flag.ordinal())) != 0) {
+						set.add(flag);
+					}
+				}
+				flagSets.add(FlagSet.copyOf(set));
+			}
+			return List.copyOf(flagSets);
 		}
 
 		@Override
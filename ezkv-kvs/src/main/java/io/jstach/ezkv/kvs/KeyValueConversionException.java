@@ -0,0 +1,88 @@
+package io.jstach.ezkv.kvs;
+
+import java.net.URI;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Thrown by the typed accessors of {@link KeyValues} like
+ * {@link KeyValues#getInt(String, int)} when the expanded value of a key value cannot be
+ * converted. The key value is kept so that the {@linkplain KeyValue.Source source} of the
+ * bad value can be reported. Key values are not serializable so only the key, the
+ * location of the source and the type survive serialization.
+ */
+public final class KeyValueConversionException extends KeyValuesException {
+
+	private static final long serialVersionUID = -3284761043521979283L;
+
+	private final transient @Nullable KeyValue keyValue;
+
+	/**
+	 * The key of the key value whose value could not be converted.
+	 */
+	private final String key;
+
+	/**
+	 * The URI of the source of the key value.
+	 */
+	private final URI sourceUri;
+
+	/**
+	 * The index of the key value in its source.
+	 */
+	private final int sourceIndex;
+
+	/**
+	 * The name of the type the value was converted to.
+	 */
+	private final String type;
+
+	KeyValueConversionException(KeyValue keyValue, String type, Throwable cause) {
+		super("Key value could not be converted to " + type + ". keyValue: " + keyValue, cause);
+		var source = keyValue.meta().source();
+		this.keyValue = keyValue;
+		this.key = keyValue.key();
+		this.sourceUri = source.uri();
+		this.sourceIndex = source.index();
+		this.type = type;
+	}
+
+	/**
+	 * The key value whose value could not be converted.
+	 * @return key value or <code>null</code> if this exception was deserialized.
+	 */
+	public @Nullable KeyValue getKeyValue() {
+		return keyValue;
+	}
+
+	/**
+	 * The key of the key value whose value could not be converted.
+	 * @return key.
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Where the key value came from. If this exception was deserialized the source only
+	 * has the URI and index.
+	 * @return source of the key value.
+	 */
+	public KeyValue.Source getSource() {
+		var kv = keyValue;
+		if (kv != null) {
+			return kv.meta().source();
+		}
+		return new KeyValue.Source(sourceUri, null, sourceIndex);
+	}
+
+	/**
+	 * The name of the type the value was converted to like <code>int</code> or
+	 * <code>duration</code>.
+	 * @return type name.
+	 */
+	public String getType() {
+		return type;
+	}
+
+}
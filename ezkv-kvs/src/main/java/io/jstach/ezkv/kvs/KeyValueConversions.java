@@ -0,0 +1,223 @@
+package io.jstach.ezkv.kvs;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+import org.jspecify.annotations.Nullable;
+
+/*
+ * Converts the expanded values of key values for the typed accessors of key values and
+ * caches the results of memoized key values by the position of the key value. The cache
+ * lives as long as the memoized key values so a new generation of configuration starts
+ * with an empty cache.
+ *
+ * A cached conversion is an immutable holder so it can be shared between threads
+ * without locking. Two threads might convert the same value at the same time in which
+ * case one of the results is kept. Reading a cached primitive does not allocate.
+ */
+final class KeyValueConversions {
+
+	enum Conversion {
+
+		INT("int"), LONG("long"), BOOLEAN("boolean"), DURATION("duration"), DATA_SIZE("data size"), LIST("list");
+
+		private final String type;
+
+		Conversion(String type) {
+			this.type = type;
+		}
+
+	}
+
+	/*
+	 * Only one conversion per key value is cached as a key is rarely read as different
+	 * types.
+	 */
+	private record Converted(Conversion conversion, long primitive, @Nullable Object value) {
+	}
+
+	private final ToIntFunction<String> positions;
+
+	private final IntFunction<KeyValue> keyValues;
+
+	private final @Nullable Converted[] converted;
+
+	/*
+	 * The positions function returns the position of the last key value with the key or
+	 * -1.
+	 */
+	KeyValueConversions(int size, ToIntFunction<String> positions, IntFunction<KeyValue> keyValues) {
+		this.positions = positions;
+		this.keyValues = keyValues;
+		this.converted = new Converted[size];
+	}
+
+	static long getLong(KeyValues keyValues, String key, Conversion conversion, long fallback) {
+		var conversions = conversions(keyValues, key);
+		if (conversions != null) {
+			return conversions.getLong(key, conversion, fallback);
+		}
+		var kv = keyValues.get(key);
+		return kv == null ? fallback : parseLong(kv, conversion);
+	}
+
+	static <T> T get(KeyValues keyValues, String key, Conversion conversion, T fallback) {
+		var conversions = conversions(keyValues, key);
+		if (conversions != null) {
+			return conversions.get(key, conversion, fallback);
+		}
+		var kv = keyValues.get(key);
+		return kv == null ? fallback : parse(kv, conversion);
+	}
+
+	private static @Nullable KeyValueConversions conversions(KeyValues keyValues, String key) {
+		return switch (keyValues) {
+			case ListKeyValues l -> l.conversions();
+			case CompactKeyValues c -> c.conversions();
+			case LayeredKeyValues l -> {
+				var layer = l.layerOf(key);
+				yield layer == null ? null : conversions(layer, key);
+			}
+			case PipelineKeyValues p -> conversions(p.memoize(), key);
+			default -> null;
+		};
+	}
+
+	long getLong(String key, Conversion conversion, long fallback) {
+		int position = positions.applyAsInt(key);
+		if (position < 0) {
+			return fallback;
+		}
+		var c = converted[position];
+		if (c == null || c.conversion != conversion) {
+			long primitive = parseLong(keyValues.apply(position), conversion);
+			converted[position] = c = new Converted(conversion, primitive, null);
+		}
+		return c.primitive;
+	}
+
+	@SuppressWarnings("unchecked")
+	<T> T get(String key, Conversion conversion, T fallback) {
+		int position = positions.applyAsInt(key);
+		if (position < 0) {
+			return fallback;
+		}
+		var c = converted[position];
+		if (c == null || c.conversion != conversion) {
+			Object value = parse(keyValues.apply(position), conversion);
+			converted[position] = c = new Converted(conversion, 0, value);
+		}
+		return (T) c.value;
+	}
+
+	private static long parseLong(KeyValue kv, Conversion conversion) {
+		String value = kv.expanded().trim();
+		try {
+			return switch (conversion) {
+				case INT -> Integer.parseInt(value);
+				case LONG -> Long.parseLong(value);
+				case BOOLEAN -> parseBoolean(value) ? 1 : 0;
+				case DATA_SIZE -> parseDataSize(value);
+				case DURATION, LIST -> throw new IllegalStateException("bug");
+			};
+		}
+		catch (IllegalArgumentException | ArithmeticException e) {
+			throw new KeyValueConversionException(kv, conversion.type, e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T parse(KeyValue kv, Conversion conversion) {
+		String value = kv.expanded().trim();
+		try {
+			Object result = switch (conversion) {
+				case DURATION -> parseDuration(value);
+				case LIST -> parseList(value);
+				case INT, LONG, BOOLEAN, DATA_SIZE -> throw new IllegalStateException("bug");
+			};
+			return (T) result;
+		}
+		catch (IllegalArgumentException | ArithmeticException e) {
+			throw new KeyValueConversionException(kv, conversion.type, e);
+		}
+	}
+
+	private static boolean parseBoolean(String value) {
+		if (value.equalsIgnoreCase("true")) {
+			return true;
+		}
+		if (value.equalsIgnoreCase("false")) {
+			return false;
+		}
+		throw new IllegalArgumentException("Expected true or false");
+	}
+
+	/*
+	 * ISO-8601 like PT10S or a number with an optional unit of ns, us, ms, s, m, h or d.
+	 * A number without a unit is milliseconds.
+	 */
+	private static Duration parseDuration(String value) {
+		if (value.regionMatches(true, value.startsWith("-") ? 1 : 0, "P", 0, 1)) {
+			return Duration.parse(value);
+		}
+		int end = unitStart(value);
+		long amount = Long.parseLong(value.substring(0, end));
+		String unit = value.substring(end).trim().toLowerCase(Locale.ROOT);
+		return switch (unit) {
+			case "ns" -> Duration.ofNanos(amount);
+			case "us" -> Duration.ofNanos(Math.multiplyExact(amount, 1000L));
+			case "", "ms" -> Duration.ofMillis(amount);
+			case "s" -> Duration.ofSeconds(amount);
+			case "m" -> Duration.ofMinutes(amount);
+			case "h" -> Duration.ofHours(amount);
+			case "d" -> Duration.ofDays(amount);
+			default -> throw new IllegalArgumentException("Unknown duration unit: " + unit);
+		};
+	}
+
+	/*
+	 * Bytes with an optional unit of B, KB, MB, GB or TB where a KB is 1024 bytes.
+	 */
+	private static long parseDataSize(String value) {
+		int end = unitStart(value);
+		long amount = Long.parseLong(value.substring(0, end));
+		String unit = value.substring(end).trim().toUpperCase(Locale.ROOT);
+		int shift = switch (unit) {
+			case "", "B" -> 0;
+			case "KB" -> 10;
+			case "MB" -> 20;
+			case "GB" -> 30;
+			case "TB" -> 40;
+			default -> throw new IllegalArgumentException("Unknown data size unit: " + unit);
+		};
+		return Math.multiplyExact(amount, 1L << shift);
+	}
+
+	private static int unitStart(String value) {
+		int i = value.startsWith("-") || value.startsWith("+") ? 1 : 0;
+		while (i < value.length() && Character.isDigit(value.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/*
+	 * Comma separated values with whitespace around the values removed. Empty values are
+	 * dropped.
+	 */
+	private static List<String> parseList(String value) {
+		List<String> list = new ArrayList<>();
+		for (String part : value.split(",")) {
+			String s = part.trim();
+			if (!s.isEmpty()) {
+				list.add(s);
+			}
+		}
+		return List.copyOf(list);
+	}
+
+}
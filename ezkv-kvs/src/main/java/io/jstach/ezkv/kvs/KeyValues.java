@@ -1,19 +1,22 @@
 package io.jstach.ezkv.kvs;
 
 import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.SequencedCollection;
 import java.util.SequencedMap;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -24,10 +27,6 @@ import java.util.stream.Stream;
 
 import org.jspecify.annotations.Nullable;
 
-import io.jstach.ezkv.kvs.interpolate.Interpolator;
-import io.jstach.ezkv.kvs.interpolate.Interpolator.InterpolationException;
-import io.jstach.ezkv.kvs.interpolate.Interpolator.MissingVariableInterpolationException;
-
 /**
  * Represents a collection of {@link KeyValue} entries with various utility methods for
  * manipulation, transformation, and expansion. This interface serves as a central point
@@ -311,20 +310,26 @@ public interface KeyValues extends Iterable<KeyValue> {
 
 	/**
 	 * Applies a transformation function to each key-value pair in the collection.
+	 * <p>
+	 * The result is lazy and consecutive {@code map}, {@code filter} and {@code flatMap}
+	 * calls are fused into a single pass over this key values on first iteration. The
+	 * result is then memoized so that the function is called at most once per key value
+	 * regardless of how many times the result is iterated.
 	 * @param kv a {@link UnaryOperator} to transform each key-value.
 	 * @return a new {@code KeyValues} with transformed entries.
 	 */
 	default KeyValues map(UnaryOperator<KeyValue> kv) {
-		return ToStringableKeyValues.of(() -> stream().map(kv));
+		return PipelineKeyValues.of(this, new PipelineKeyValues.Stage.Map(kv));
 	}
 
 	/**
-	 * Filters the key-value pairs based on a predicate.
+	 * Filters the key-value pairs based on a predicate. Like {@link #map(UnaryOperator)}
+	 * the predicate is called at most once per key value.
 	 * @param predicate a {@link Predicate} to test each key-value.
 	 * @return a new {@code KeyValues} with filtered entries.
 	 */
 	default KeyValues filter(Predicate<KeyValue> predicate) {
-		return ToStringableKeyValues.of(() -> stream().filter(predicate));
+		return PipelineKeyValues.of(this, new PipelineKeyValues.Stage.Filter(predicate));
 	}
 
 	/**
@@ -340,16 +345,201 @@ public interface KeyValues extends Iterable<KeyValue> {
 		return Optional.ofNullable(last);
 	}
 
+	/**
+	 * Gets the last key value with the given key as later keys override earlier keys of
+	 * the same name. Memoized key values use an index that is built once so that repeated
+	 * lookups are constant time and do not allocate.
+	 * @param key the key to look up.
+	 * @return the last key value with the key or <code>null</code> if there is none.
+	 * @see #memoize()
+	 */
+	default @Nullable KeyValue get(String key) {
+		KeyValue found = null;
+		for (var kv : this) {
+			if (kv.key().equals(key)) {
+				found = kv;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Checks if there is a key value with the given key.
+	 * @param key the key to look up.
+	 * @return true if a key value has the key.
+	 * @see #get(String)
+	 */
+	default boolean contains(String key) {
+		return stream().anyMatch(kv -> kv.key().equals(key));
+	}
+
+	/**
+	 * Gets the expanded value of the last key value with the key as an int.
+	 * <p>
+	 * The typed accessors convert the {@linkplain KeyValue#expanded() expanded} value
+	 * with whitespace around it removed. Memoized key values cache the converted value of
+	 * each key value so repeated reads do not parse again and reading a primitive does
+	 * not allocate.
+	 * @param key the key to look up.
+	 * @param fallback returned if there is no key value with the key.
+	 * @return the converted value or the fallback.
+	 * @throws KeyValueConversionException if the value is not an int.
+	 * @see #get(String)
+	 */
+	default int getInt(String key, int fallback) throws KeyValueConversionException {
+		return (int) KeyValueConversions.getLong(this, key, KeyValueConversions.Conversion.INT, fallback);
+	}
+
+	/**
+	 * Gets the expanded value of the last key value with the key as a long.
+	 * @param key the key to look up.
+	 * @param fallback returned if there is no key value with the key.
+	 * @return the converted value or the fallback.
+	 * @throws KeyValueConversionException if the value is not a long.
+	 * @see #getInt(String, int)
+	 */
+	default long getLong(String key, long fallback) throws KeyValueConversionException {
+		return KeyValueConversions.getLong(this, key, KeyValueConversions.Conversion.LONG, fallback);
+	}
+
+	/**
+	 * Gets the expanded value of the last key value with the key as a boolean which must
+	 * be <code>true</code> or <code>false</code> ignoring case.
+	 * @param key the key to look up.
+	 * @param fallback returned if there is no key value with the key.
+	 * @return the converted value or the fallback.
+	 * @throws KeyValueConversionException if the value is not a boolean.
+	 * @see #getInt(String, int)
+	 */
+	default boolean getBoolean(String key, boolean fallback) throws KeyValueConversionException {
+		return KeyValueConversions.getLong(this, key, KeyValueConversions.Conversion.BOOLEAN, fallback ? 1 : 0) != 0;
+	}
+
+	/**
+	 * Gets the expanded value of the last key value with the key as a duration. The value
+	 * is either ISO-8601 like <code>PT10S</code> or a number followed by one of the units
+	 * <code>ns</code>, <code>us</code>, <code>ms</code>, <code>s</code>, <code>m</code>,
+	 * <code>h</code> or <code>d</code>. A number without a unit is in milliseconds.
+	 * @param key the key to look up.
+	 * @param fallback returned if there is no key value with the key.
+	 * @return the converted value or the fallback.
+	 * @throws KeyValueConversionException if the value is not a duration.
+	 * @see #getInt(String, int)
+	 */
+	default Duration getDuration(String key, Duration fallback) throws KeyValueConversionException {
+		return KeyValueConversions.get(this, key, KeyValueConversions.Conversion.DURATION, fallback);
+	}
+
+	/**
+	 * Gets the expanded value of the last key value with the key as a number of bytes.
+	 * The value is a number optionally followed by one of the units <code>B</code>,
+	 * <code>KB</code>, <code>MB</code>, <code>GB</code> or <code>TB</code> ignoring case
+	 * where <code>1KB</code> is <code>1024</code> bytes.
+	 * @param key the key to look up.
+	 * @param fallback returned if there is no key value with the key.
+	 * @return the number of bytes or the fallback.
+	 * @throws KeyValueConversionException if the value is not a data size.
+	 * @see #getInt(String, int)
+	 */
+	default long getDataSize(String key, long fallback) throws KeyValueConversionException {
+		return KeyValueConversions.getLong(this, key, KeyValueConversions.Conversion.DATA_SIZE, fallback);
+	}
+
+	/**
+	 * Gets the expanded value of the last key value with the key as a comma separated
+	 * list where whitespace around the elements is removed and empty elements are
+	 * dropped.
+	 * @param key the key to look up.
+	 * @return an unmodifiable list which is empty if there is no key value with the key.
+	 * @see #getInt(String, int)
+	 */
+	default List<String> getList(String key) {
+		return KeyValueConversions.get(this, key, KeyValueConversions.Conversion.LIST, List.of());
+	}
+
+	/**
+	 * Gets the key values whose keys start with the prefix in the same order. This is
+	 * useful for hierarchical keys like {@code db.pool.max} where {@code subtree("db.")}
+	 * returns all the {@code db} key values. Memoized key values use a sorted index built
+	 * once so that only the matches are visited.
+	 * @param prefix the key prefix which is matched exactly like
+	 * {@link String#startsWith(String)}.
+	 * @return key values with keys starting with the prefix.
+	 * @see #stripPrefix(String)
+	 */
+	default KeyValues subtree(String prefix) {
+		return filter(kv -> kv.key().startsWith(prefix));
+	}
+
+	/**
+	 * Gets the key values whose keys start with the prefix with the prefix removed from
+	 * their keys. Key values whose key is exactly the prefix are not included. For
+	 * example {@code stripPrefix("db.")} turns {@code db.pool.max} into {@code pool.max}.
+	 * @param prefix the key prefix to remove.
+	 * @return key values with the prefix removed from the keys.
+	 * @see #subtree(String)
+	 */
+	default KeyValues stripPrefix(String prefix) {
+		int length = prefix.length();
+		return subtree(prefix).filter(kv -> kv.key().length() > length)
+			.map(kv -> kv.withKey(kv.key().substring(length)));
+	}
+
+	/**
+	 * Gets the distinct names of the children of the prefix where the name of a child is
+	 * the part of a key after the prefix up to the next <code>.</code>. For example with
+	 * the keys {@code db.pool.max}, {@code db.pool.min} and {@code db.url}
+	 * {@code childrenOf("db.")} returns {@code pool} and {@code url} and
+	 * {@code childrenOf("")} returns {@code db}.
+	 * @param prefix the key prefix usually ending with <code>.</code>.
+	 * @return the names of the children sorted by key.
+	 */
+	default Set<String> childrenOf(String prefix) {
+		int length = prefix.length();
+		return stream().map(KeyValue::key).filter(k -> k.length() > length && k.startsWith(prefix)).sorted().map(k -> {
+			int end = k.indexOf('.', length);
+			return k.substring(length, end < 0 ? k.length() : end);
+		}).collect(Collectors.toCollection(LinkedHashSet::new));
+	}
+
 	/**
 	 * Flattens the key-values by applying a mapping function that returns another
-	 * {@code KeyValues}.
+	 * {@code KeyValues}. Like {@link #map(UnaryOperator)} the function is called at most
+	 * once per key value.
 	 * @param func a function that transforms a {@link KeyValue} into another
 	 * {@code KeyValues}.
 	 * @return a new flattened {@code KeyValues}.
 	 */
 	default KeyValues flatMap(Function<KeyValue, KeyValues> func) {
-		var f = func.andThen(KeyValues::stream);
-		return ToStringableKeyValues.of(() -> stream().flatMap(f));
+		return PipelineKeyValues.of(this, new PipelineKeyValues.Stage.FlatMap(func));
+	}
+
+	/**
+	 * Stacks the overrides on top of these key values. Iterating the result is the same
+	 * as iterating these key values followed by the overrides so keys of the overrides
+	 * take precedence. Neither is copied once {@linkplain #memoize() memoized} so
+	 * deriving many key values from a large base, for example per tenant, only costs
+	 * memory for the overrides. Lookups with {@link #get(String)} go through the layers
+	 * from the top.
+	 * @param overrides key values that take precedence.
+	 * @return memoized layered key values.
+	 * @see #underlay(KeyValues)
+	 */
+	default KeyValues overlay(KeyValues overrides) {
+		return LayeredKeyValues.of(this, overrides);
+	}
+
+	/**
+	 * Puts the defaults underneath these key values so that keys of these key values take
+	 * precedence. This is the layered equivalent of loading the defaults with
+	 * {@link KeyValuesResource#FLAG_NO_REPLACE} as the resulting {@link #toMap()} and
+	 * {@link #get(String)} are the same however the defaults come first when iterated.
+	 * @param defaults key values used if a key is missing.
+	 * @return memoized layered key values.
+	 * @see #overlay(KeyValues)
+	 */
+	default KeyValues underlay(KeyValues defaults) {
+		return LayeredKeyValues.of(defaults, this);
 	}
 
 	/**
@@ -357,8 +547,11 @@ public interface KeyValues extends Iterable<KeyValue> {
 	 * in <code>this</code> take precedence over the passed in variables such that if
 	 * there is a matching key in this and in variables the value of the key value in this
 	 * will be used.
+	 * <p>
+	 * The returned map is the unmodifiable {@link #toMap()} of the expanded key values
+	 * and throws {@link UnsupportedOperationException} if modified. Copy it to modify it.
 	 * @param variables a {@link Variables} map for value substitution.
-	 * @return a map of interpolated key-values.
+	 * @return an unmodifiable map of interpolated key-values.
 	 * @see #expand(Variables)
 	 * @see #toMap()
 	 */
@@ -377,6 +570,25 @@ public interface KeyValues extends Iterable<KeyValue> {
 		return KeyValuesInterpolator.interpolateKeyValues(this, variables, false);
 	}
 
+	/**
+	 * Expands again with changed variables reusing the previous expansion. Only the key
+	 * values that reference a changed variable directly or through other keys are
+	 * interpolated again and every other key value instance is reused. A changed variable
+	 * that is a key replaces the value of the last key value with that key as if it was
+	 * {@linkplain KeyValue#withSealedValue(String) sealed}. Changed variables take
+	 * precedence over the variables of the previous expansion.
+	 * <p>
+	 * This is meant for quick updates like overriding a flag on key values returned from
+	 * {@link #expand(Variables)} or a {@link KeyValuesLoader}. If these key values are
+	 * not the result of an expansion this is the same as {@link #expand(Variables)} with
+	 * only the changed variables.
+	 * @param changedVariables variables that changed or were added.
+	 * @return a new {@code KeyValues} with the changed values.
+	 */
+	default KeyValues reexpand(Map<String, String> changedVariables) {
+		return KeyValuesInterpolator.reexpand(this, changedVariables);
+	}
+
 	/**
 	 * Returns a memoized version of this {@code KeyValues} which means repeated calls to
 	 * iteratore or stream over the KeyValues will always generate the same result.
@@ -389,6 +601,20 @@ public interface KeyValues extends Iterable<KeyValue> {
 		return copyOf(stream().toList());
 	}
 
+	/**
+	 * Returns memoized key values that use less memory which is useful if the key values
+	 * are kept around for a long time for example to compare generations of
+	 * configuration. The keys and values are stored in arrays and key values from the
+	 * same resource share their source and flags. {@link KeyValue} instances are only
+	 * created when iterated so iterating again returns equal but not the same instances.
+	 * Compact key values are not {@linkplain #reexpand(Map) reexpanded} incrementally.
+	 * @return compact memoized key values.
+	 * @see #memoize()
+	 */
+	default KeyValues compact() {
+		return CompactKeyValues.of(this);
+	}
+
 	/**
 	 * Redacts sensitive key-value entries by replacing their values.
 	 * @return a new {@code KeyValues} with redacted entries.
@@ -403,7 +629,13 @@ public interface KeyValues extends Iterable<KeyValue> {
 	 * call does not do any interpolation!</strong> If interpolation is desired it needs
 	 * to be done prior with {@link #expand(Variables)} or {@link #interpolate(Variables)}
 	 * should be used.
-	 * @return a {@link Map} of key-value pairs.
+	 * <p>
+	 * Memoized key values build the map once and return the same unmodifiable map on
+	 * repeated calls so the returned map should be treated as read only. Modifying the
+	 * map of memoized key values, which includes expanded, layered and loaded key values,
+	 * throws {@link UnsupportedOperationException}. Copy it, for example with
+	 * {@code new LinkedHashMap<>(kvs.toMap())}, to modify it.
+	 * @return a {@link Map} of key-value pairs which may be unmodifiable.
 	 */
 	default SequencedMap<String, String> toMap() {
 		SequencedMap<String, String> m = new LinkedHashMap<>();
@@ -423,6 +655,119 @@ public interface KeyValues extends Iterable<KeyValue> {
 		return media.formatter().format(this);
 	}
 
+	/**
+	 * A 64 bit hash of the keys and expanded values in order that is the same across JVM
+	 * runs. Equal key values have equal fingerprints and it is very unlikely that
+	 * different key values have the same fingerprint so comparing the fingerprints of two
+	 * generations of configuration is a cheap way to skip reload notifications when
+	 * nothing changed. Only the key and the expanded value of each key value are used.
+	 * <p>
+	 * Memoized key values compute the fingerprint once. Key values returned from
+	 * {@link #expand(Variables)} or a {@link KeyValuesLoader} already have it computed
+	 * and {@link #reexpand(Map)} only updates it with the key values that changed.
+	 * @return fingerprint of the keys and expanded values.
+	 * @see #diff(KeyValues)
+	 */
+	default long fingerprint() {
+		return KeyValuesFingerprint.of(this);
+	}
+
+	/**
+	 * Finds the keys that were added, removed or whose expanded value changed going from
+	 * these key values to the given key values using the same last wins semantics as
+	 * {@link #toMap()}. Values of key values that are the same instance in both are not
+	 * compared which is the common case after {@link #reexpand(Map)}.
+	 * @param other usually a newer generation of these key values.
+	 * @return the changed keys.
+	 * @see #fingerprint()
+	 */
+	default Diff diff(KeyValues other) {
+		return Diff.of(this, other);
+	}
+
+	/**
+	 * The keys that changed between two key values.
+	 *
+	 * @param added keys that are only in the newer key values in order.
+	 * @param removed keys that are only in the older key values in order.
+	 * @param changed keys whose expanded value changed in order of the older key values.
+	 * @see KeyValues#diff(KeyValues)
+	 */
+	public record Diff(Set<String> added, Set<String> removed, Set<String> changed) {
+
+		/**
+		 * Copies the sets.
+		 * @param added keys that are only in the newer key values in order.
+		 * @param removed keys that are only in the older key values in order.
+		 * @param changed keys whose expanded value changed in order of the older key
+		 * values.
+		 */
+		public Diff {
+			added = Collections.unmodifiableSet(new LinkedHashSet<>(added));
+			removed = Collections.unmodifiableSet(new LinkedHashSet<>(removed));
+			changed = Collections.unmodifiableSet(new LinkedHashSet<>(changed));
+		}
+
+		/**
+		 * Checks if nothing changed.
+		 * @return true if no keys were added, removed or changed.
+		 */
+		public boolean isEmpty() {
+			return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+		}
+
+		/**
+		 * Checks if a key was added, removed or changed.
+		 * @param key the key.
+		 * @return true if the key is in any of the sets.
+		 */
+		public boolean contains(String key) {
+			return added.contains(key) || removed.contains(key) || changed.contains(key);
+		}
+
+		private static final Diff EMPTY = new Diff(Set.of(), Set.of(), Set.of());
+
+		static Diff of(KeyValues previous, KeyValues next) {
+			if (previous == next) {
+				return EMPTY;
+			}
+			var p = previous.memoize();
+			var n = next.memoize();
+			if (p == n) {
+				return EMPTY;
+			}
+			Set<String> added = new LinkedHashSet<>();
+			Set<String> removed = new LinkedHashSet<>();
+			Set<String> changed = new LinkedHashSet<>();
+			/*
+			 * Memoized key values cache the map and values of reused key values are the
+			 * same instance so equals returns right away.
+			 */
+			var previousMap = p.toMap();
+			var nextMap = n.toMap();
+			for (var e : previousMap.entrySet()) {
+				String key = e.getKey();
+				String value = nextMap.get(key);
+				if (value == null) {
+					removed.add(key);
+				}
+				else if (!value.equals(e.getValue())) {
+					changed.add(key);
+				}
+			}
+			for (String key : nextMap.keySet()) {
+				if (!previousMap.containsKey(key)) {
+					added.add(key);
+				}
+			}
+			if (added.isEmpty() && removed.isEmpty() && changed.isEmpty()) {
+				return EMPTY;
+			}
+			return new Diff(added, removed, changed);
+		}
+
+	}
+
 	// TODO multiMap SequencedMap<String, List<String>>
 
 }
@@ -464,10 +809,55 @@ record PrintableKeyValues(KeyValues values) implements ToStringableKeyValues {
 	}
 }
 
-record ListKeyValues(List<KeyValue> keyValues) implements ToStringableKeyValues, MemoizedKeyValues {
+/*
+ * Key values backed by an immutable list. The index for key lookup and the map are only
+ * built when first needed. If the key values were expanded they keep what is needed to
+ * expand them again.
+ */
+final class ListKeyValues implements ToStringableKeyValues, MemoizedKeyValues {
+
+	private final List<KeyValue> keyValues;
+
+	private final KeyValuesInterpolator.@Nullable Expansion expansion;
 
-	ListKeyValues {
-		keyValues = List.copyOf(keyValues);
+	private volatile @Nullable KeyValuesIndex index;
+
+	private volatile @Nullable SequencedMap<String, String> map;
+
+	private volatile @Nullable Long fingerprint;
+
+	private volatile @Nullable KeyValueConversions conversions;
+
+	ListKeyValues(List<KeyValue> keyValues) {
+		this(keyValues, null, null, null);
+	}
+
+	ListKeyValues(List<KeyValue> keyValues, KeyValuesInterpolator.@Nullable Expansion expansion,
+			@Nullable KeyValuesIndex index, @Nullable Long fingerprint) {
+		this.keyValues = List.copyOf(keyValues);
+		this.expansion = expansion;
+		this.index = index;
+		this.fingerprint = fingerprint;
+	}
+
+	List<KeyValue> keyValues() {
+		return keyValues;
+	}
+
+	KeyValuesInterpolator.@Nullable Expansion expansion() {
+		return expansion;
+	}
+
+	/*
+	 * Built once and shared with key values derived from these with the same keys in the
+	 * same order like the expanded key values.
+	 */
+	KeyValuesIndex index() {
+		var index = this.index;
+		if (index == null) {
+			this.index = index = KeyValuesIndex.of(KeyValuesIndex.keys(keyValues));
+		}
+		return index;
 	}
 
 	@Override
@@ -494,75 +884,98 @@ record ListKeyValues(List<KeyValue> keyValues) implements ToStringableKeyValues,
 	}
 
 	@Override
-	public final String toString() {
-		return ToStringableKeyValues.toString(this);
+	public @Nullable KeyValue get(String key) {
+		int position = index().lastIndexOf(key);
+		return position < 0 ? null : keyValues.get(position);
 	}
-}
 
-class KeyValuesInterpolator {
+	@Override
+	public boolean contains(String key) {
+		return index().lastIndexOf(key) >= 0;
+	}
 
-	static KeyValues interpolateKeyValues(final KeyValues keyValues, final Variables variables, boolean local) {
-		// local flag indicates all the key values
-		// are from the same resource.
-		List<KeyValue> kvs = keyValues.stream().toList();
+	@Override
+	public KeyValues subtree(String prefix) {
+		if (prefix.isEmpty()) {
+			return this;
+		}
+		int[] positions = index().positionsWithPrefix(KeyValuesIndex.keys(keyValues), prefix);
+		if (positions.length == keyValues.size()) {
+			return this;
+		}
+		List<KeyValue> kvs = new ArrayList<>(positions.length);
+		for (int position : positions) {
+			kvs.add(keyValues.get(position));
+		}
+		return new ListKeyValues(kvs);
+	}
 
-		final Map<String, KeyValue> flat = new HashMap<>(kvs.size());
-		kvs.forEach(kv -> flat.put(kv.key(), kv));
+	@Override
+	public KeyValues stripPrefix(String prefix) {
+		int length = prefix.length();
+		int[] positions = index().positionsWithPrefix(KeyValuesIndex.keys(keyValues), prefix);
+		List<KeyValue> kvs = new ArrayList<>(positions.length);
+		for (int position : positions) {
+			var kv = keyValues.get(position);
+			if (kv.key().length() > length) {
+				kvs.add(kv.withKey(kv.key().substring(length)));
+			}
+		}
+		return new ListKeyValues(kvs);
+	}
 
-		final Map<String, String> resolved = new LinkedHashMap<>(kvs.size());
+	@Override
+	public Set<String> childrenOf(String prefix) {
+		return index().childrenOf(KeyValuesIndex.keys(keyValues), prefix, '.');
+	}
 
-		Variables combined = Variables.builder().add(k -> {
-			var f = flat.get(k);
-			if (f != null) {
-				return f.raw();
+	@Override
+	public SequencedMap<String, String> toMap() {
+		var map = this.map;
+		if (map == null) {
+			SequencedMap<String, String> m = new LinkedHashMap<>(index().size() * 2);
+			for (var kv : keyValues) {
+				m.put(kv.key(), kv.expanded());
 			}
-			return null;
+			this.map = map = Collections.unmodifiableSequencedMap(m);
+		}
+		return map;
+	}
 
-		}).add(resolved).add(variables).build();
-		@SuppressWarnings("null")
-		Interpolator sub = Interpolator.create((key) -> {
-			return combined.getValue(key);
-		});
-		List<KeyValue> expanded = new ArrayList<>();
+	KeyValueConversions conversions() {
+		var conversions = this.conversions;
+		if (conversions == null) {
+			this.conversions = conversions = new KeyValueConversions(keyValues.size(), index()::lastIndexOf,
+					keyValues::get);
+		}
+		return conversions;
+	}
 
-		for (KeyValue kv : kvs) {
-			KeyValue last = flat.remove(kv.key());
+	/*
+	 * Expanded key values get the fingerprint computed while expanding.
+	 */
+	@Override
+	public long fingerprint() {
+		var fingerprint = this.fingerprint;
+		if (fingerprint == null) {
+			this.fingerprint = fingerprint = KeyValuesFingerprint.of(keyValues);
+		}
+		return fingerprint;
+	}
 
-			String value;
-			/*
-			 * We allow sensitive to be interpolated locally. The assumption here is when
-			 * the local flag is passed all the key values passed are from the same
-			 * resource.
-			 */
-			if (kv.isNoInterpolation() || (kv.isSensitive() && !local)) {
-				value = kv.value();
-			}
-			else {
-				String v = kv.raw();
-				try {
-					value = (v.indexOf('$') != -1) ? sub.interpolate(kv.key(), v) : v;
-				}
-				catch (MissingVariableInterpolationException e) {
-					throw e;
-				}
-				catch (InterpolationException e) {
-					// TODO this was old code that may not long be applicable.
-					String r = resolved.get(kv.key());
-					if (r == null) {
-						r = kv.expanded();
-					}
-					value = r;
-				}
-			}
-			expanded.add(kv.withExpanded(value));
-			resolved.put(kv.key(), value);
-			if (last != null) {
-				flat.put(kv.key(), last);
-			}
+	@Override
+	public boolean equals(@Nullable Object obj) {
+		return obj instanceof ListKeyValues other && keyValues.equals(other.keyValues);
+	}
 
-		}
+	@Override
+	public int hashCode() {
+		return keyValues.hashCode();
+	}
 
-		return KeyValues.copyOf(expanded);
+	@Override
+	public final String toString() {
+		return ToStringableKeyValues.toString(this);
 	}
 
 }
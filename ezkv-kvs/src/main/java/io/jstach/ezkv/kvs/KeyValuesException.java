@@ -12,7 +12,7 @@ import org.jspecify.annotations.Nullable;
  */
 public abstract sealed class KeyValuesException extends RuntimeException
 		permits KeyValuesMediaException, io.jstach.ezkv.kvs.interpolate.Interpolator.InterpolationException,
-		KeyValuesResourceParserException, KeyValuesResourceNameException {
+		KeyValuesResourceParserException, KeyValuesResourceNameException, KeyValueConversionException {
 
 	private static final long serialVersionUID = 6345926490272278304L;
 
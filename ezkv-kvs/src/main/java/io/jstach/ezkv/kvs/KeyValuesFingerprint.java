@@ -0,0 +1,67 @@
+package io.jstach.ezkv.kvs;
+
+/*
+ * A 64 bit fingerprint of the keys and expanded values of key values in order. Every
+ * key value is hashed with its position and the fingerprint is the sum of those hashes so
+ * that replacing the key value at a position only needs the hash of the old and the new
+ * key value. This is what lets the interpolator update the fingerprint when expanding
+ * again without going through all the key values.
+ *
+ * The hash only depends on the characters of the strings so it is the same across JVM
+ * runs unlike identity or seeded hashes. It is not a cryptographic hash.
+ */
+final class KeyValuesFingerprint {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private KeyValuesFingerprint() {
+	}
+
+	static long of(Iterable<KeyValue> keyValues) {
+		long fingerprint = 0;
+		int position = 0;
+		for (var kv : keyValues) {
+			fingerprint += of(position++, kv);
+		}
+		return fingerprint;
+	}
+
+	/*
+	 * The part of the fingerprint of the key value at the position.
+	 */
+	static long of(int position, KeyValue kv) {
+		long h = mix(FNV_OFFSET + position);
+		h = mix(hash(h, kv.key()));
+		h = mix(hash(h, kv.expanded()));
+		return h;
+	}
+
+	/*
+	 * FNV-1a of the chars. The length goes first so that moving characters from the key
+	 * to the value changes the hash.
+	 */
+	private static long hash(long h, String s) {
+		int length = s.length();
+		h = (h ^ length) * FNV_PRIME;
+		for (int i = 0; i < length; i++) {
+			h = (h ^ s.charAt(i)) * FNV_PRIME;
+		}
+		return h;
+	}
+
+	/*
+	 * The murmur3 finalizer so that every bit of the input affects every bit of the
+	 * output before the hashes are added.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
@@ -0,0 +1,215 @@
+package io.jstach.ezkv.kvs;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jspecify.annotations.Nullable;
+
+/*
+ * An immutable open addressing hash table from the keys of a list of key values to the
+ * position of the last key value with the key. Later keys override earlier keys so last
+ * wins. It also has for every position the position of the previous key value with the
+ * same key which is what the interpolator needs for keys that reference themselves.
+ *
+ * Lookups do not allocate. The table uses linear probing and is at most half full.
+ *
+ * For prefix queries the keys are sorted on first use so that the key values with a
+ * prefix are found with a binary search followed by a scan of only the matches.
+ */
+final class KeyValuesIndex {
+
+	private final String[] keys;
+
+	private final int[] positions;
+
+	private final int[] previous;
+
+	private final int mask;
+
+	private final int size;
+
+	private volatile @Nullable Sorted sorted;
+
+	private KeyValuesIndex(String[] keys, int[] positions, int[] previous, int size) {
+		this.keys = keys;
+		this.positions = positions;
+		this.previous = previous;
+		this.mask = keys.length - 1;
+		this.size = size;
+	}
+
+	/*
+	 * A view of the keys of key values.
+	 */
+	static List<String> keys(List<KeyValue> keyValues) {
+		return new AbstractList<>() {
+
+			@Override
+			public String get(int index) {
+				return keyValues.get(index).key();
+			}
+
+			@Override
+			public int size() {
+				return keyValues.size();
+			}
+
+		};
+	}
+
+	static KeyValuesIndex of(List<String> keyList) {
+		int count = keyList.size();
+		int capacity = Integer.highestOneBit(Math.max(2, count) * 2 - 1) << 1;
+		String[] keys = new String[capacity];
+		int[] positions = new int[capacity];
+		int[] previous = new int[count];
+		Arrays.fill(previous, -1);
+		int mask = capacity - 1;
+		int size = 0;
+		int position = 0;
+		for (String key : keyList) {
+			int slot = hash(key) & mask;
+			String k;
+			while ((k = keys[slot]) != null && !k.equals(key)) {
+				slot = (slot + 1) & mask;
+			}
+			if (k == null) {
+				keys[slot] = key;
+				size++;
+			}
+			else {
+				previous[position] = positions[slot];
+			}
+			positions[slot] = position++;
+		}
+		return new KeyValuesIndex(keys, positions, previous, size);
+	}
+
+	/*
+	 * The position of the last key value with the key or -1.
+	 */
+	int lastIndexOf(String key) {
+		int slot = hash(key) & mask;
+		String k;
+		while ((k = keys[slot]) != null) {
+			if (k.equals(key)) {
+				return positions[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/*
+	 * The position of the previous key value with the same key as the key value at the
+	 * position or -1.
+	 */
+	int previousIndexOf(int position) {
+		return previous[position];
+	}
+
+	/*
+	 * The number of distinct keys.
+	 */
+	int size() {
+		return size;
+	}
+
+	/*
+	 * The positions of the key values whose keys start with the prefix in ascending
+	 * order.
+	 */
+	int[] positionsWithPrefix(List<String> keyList, String prefix) {
+		var sorted = sorted(keyList);
+		int start = sorted.first(prefix);
+		int end = start;
+		while (end < sorted.keys.length && sorted.keys[end].startsWith(prefix)) {
+			end++;
+		}
+		int[] positions = Arrays.copyOfRange(sorted.positions, start, end);
+		Arrays.sort(positions);
+		return positions;
+	}
+
+	/*
+	 * The distinct parts of the keys after the prefix up to the separator in key order.
+	 */
+	Set<String> childrenOf(List<String> keyList, String prefix, char separator) {
+		var sorted = sorted(keyList);
+		Set<String> children = new LinkedHashSet<>();
+		int length = prefix.length();
+		for (int i = sorted.first(prefix); i < sorted.keys.length; i++) {
+			String key = sorted.keys[i];
+			if (!key.startsWith(prefix)) {
+				break;
+			}
+			if (key.length() == length) {
+				continue;
+			}
+			int end = key.indexOf(separator, length);
+			children.add(key.substring(length, end < 0 ? key.length() : end));
+		}
+		return Collections.unmodifiableSet(children);
+	}
+
+	private Sorted sorted(List<String> keyList) {
+		var sorted = this.sorted;
+		if (sorted == null) {
+			this.sorted = sorted = Sorted.of(keyList);
+		}
+		return sorted;
+	}
+
+	/*
+	 * The keys and their positions sorted by key. The sort is stable so the positions of
+	 * the same key stay in order.
+	 */
+	private record Sorted(String[] keys, int[] positions) {
+
+		static Sorted of(List<String> keyList) {
+			int count = keyList.size();
+			Integer[] order = new Integer[count];
+			for (int i = 0; i < count; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, Comparator.comparing(keyList::get));
+			String[] keys = new String[count];
+			int[] positions = new int[count];
+			for (int i = 0; i < count; i++) {
+				positions[i] = order[i];
+				keys[i] = keyList.get(positions[i]);
+			}
+			return new Sorted(keys, positions);
+		}
+
+		/*
+		 * The first index of a key that is greater or equal to the prefix.
+		 */
+		int first(String prefix) {
+			int low = 0;
+			int high = keys.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (keys[mid].compareTo(prefix) < 0) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+	}
+
+	private static int hash(String key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+}
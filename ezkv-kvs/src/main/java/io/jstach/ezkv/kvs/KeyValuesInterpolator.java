@@ -0,0 +1,652 @@
+package io.jstach.ezkv.kvs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+import org.jspecify.annotations.Nullable;
+
+import io.jstach.ezkv.kvs.interpolate.Interpolator;
+import io.jstach.ezkv.kvs.interpolate.Interpolator.InterpolationException;
+
+/*
+ * Interpolates key values where other keys take precedence over the variables. A key
+ * value that references its own key resolves to the value of the previous key value with
+ * the same key (chaining) and if there is none the variables. A key value that references
+ * another key resolves to the value of the last key value with that key.
+ *
+ * Every key value is resolved exactly once. The compiled templates of the raw values give
+ * us a graph of which key values reference which. We find the strongly connected
+ * components of the graph with Tarjan's algorithm which also sorts them so that key
+ * values are resolved after the key values they reference. Key values that are
+ * referenced in ways we cannot know up front (variables in variable names or in the
+ * values of variables) are resolved on demand. A cycle is reported with the full path.
+ *
+ * The expanded key values keep the occurrences so that when some variables change only
+ * the key values that depend on them are expanded again.
+ */
+final class KeyValuesInterpolator {
+
+	/*
+	 * Resolving in parallel is only worth it for a very large number of key values.
+	 */
+	static final int PARALLEL_THRESHOLD = 10_000;
+
+	/*
+	 * A key value and the previous key value with the same key. The index is the position
+	 * of the key value. The template of the raw value is compiled once and lives as long
+	 * as the occurrence which the expanded key values keep for expanding again. It is
+	 * null if the raw value has no variables.
+	 */
+	record Occurrence(KeyValue keyValue, @Nullable Occurrence previous, int index,
+			Interpolator.@Nullable Template template) {
+
+		Occurrence(KeyValue keyValue, @Nullable Occurrence previous, int index) {
+			this(keyValue, previous, index, compile(keyValue));
+		}
+
+		String key() {
+			return keyValue.key();
+		}
+
+		private static Interpolator.@Nullable Template compile(KeyValue kv) {
+			String raw = kv.raw();
+			return raw.indexOf('$') < 0 ? null : Interpolator.compile(raw);
+		}
+
+	}
+
+	private final Function<String, @Nullable Occurrence> keys;
+
+	private final Variables variables;
+
+	private final boolean local;
+
+	/*
+	 * Resolved values by index if all the key values are known up front otherwise we
+	 * resolve lazily into the map.
+	 */
+	private final @Nullable String @Nullable [] values;
+
+	private final Map<Occurrence, String> resolved = new IdentityHashMap<>();
+
+	/*
+	 * When expanding again the values of the key values that are not dirty are reused.
+	 */
+	private final @Nullable List<KeyValue> reuse;
+
+	private final @Nullable BitSet dirty;
+
+	/*
+	 * Notified with the index of a key value that looked up a name that is not in its
+	 * template for example a variable in a variable name.
+	 */
+	private final @Nullable IntConsumer dynamic;
+
+	private final Path path = new Path();
+
+	/*
+	 * Compiled templates of variable values shared by the interpolators of all the key
+	 * values. Resolving can be parallel.
+	 */
+	private final Map<String, Interpolator.Template> templates = new ConcurrentHashMap<>();
+
+	private KeyValuesInterpolator(Function<String, @Nullable Occurrence> keys, Variables variables, boolean local,
+			@Nullable String @Nullable [] values, @Nullable List<KeyValue> reuse, @Nullable BitSet dirty,
+			@Nullable IntConsumer dynamic) {
+		this.keys = keys;
+		this.variables = variables;
+		this.local = local;
+		this.values = values;
+		this.reuse = reuse;
+		this.dirty = dirty;
+		this.dynamic = dynamic;
+	}
+
+	/*
+	 * Resolves lazily. The keys function should return the last occurrence of a key.
+	 */
+	static KeyValuesInterpolator of(Function<String, @Nullable Occurrence> keys, Variables variables) {
+		return new KeyValuesInterpolator(keys, variables, false, null, null, null, null);
+	}
+
+	static KeyValues interpolateKeyValues(final KeyValues keyValues, final Variables variables, boolean local) {
+		// local flag indicates all the key values
+		// are from the same resource.
+		var kvs = keyValues.memoize() instanceof ListKeyValues l ? l : new ListKeyValues(keyValues.stream().toList());
+		return interpolate(kvs, variables, local, false);
+	}
+
+	/*
+	 * The key values keep what is needed to expand them again and share the index with
+	 * the key values passed in. Unchanged key values are not copied.
+	 */
+	static ListKeyValues interpolate(ListKeyValues keyValues, Variables variables, boolean local, boolean parallel) {
+		var kvs = keyValues.keyValues();
+		var index = keyValues.index();
+		int size = kvs.size();
+		Occurrence[] occurrences = new Occurrence[size];
+		int i = 0;
+		for (var kv : kvs) {
+			int previous = index.previousIndexOf(i);
+			occurrences[i] = new Occurrence(kv, previous < 0 ? null : occurrences[previous], i);
+			i++;
+		}
+		@Nullable
+		String[] values = new String[size];
+		/*
+		 * Written from multiple threads when resolving in parallel but every index is
+		 * only written by the thread resolving it.
+		 */
+		boolean[] dynamic = new boolean[size];
+		var interpolator = new KeyValuesInterpolator(keys(index, occurrences), variables, local, values, null, null,
+				position -> dynamic[position] = true);
+		interpolator.resolveAll(occurrences, parallel && size >= PARALLEL_THRESHOLD);
+
+		List<KeyValue> expanded = new ArrayList<>(size);
+		BitSet dynamicSet = new BitSet(size);
+		long fingerprint = 0;
+		i = 0;
+		for (KeyValue kv : kvs) {
+			String value = values[i];
+			if (value == null) {
+				throw new IllegalStateException("bug");
+			}
+			var e = kv.withExpanded(value);
+			expanded.add(e);
+			fingerprint += KeyValuesFingerprint.of(i, e);
+			if (dynamic[i]) {
+				dynamicSet.set(i);
+			}
+			i++;
+		}
+		var expansion = new Expansion(occurrences, index, variables, Map.of(), local, dynamicSet, null);
+		return new ListKeyValues(expanded, expansion, index, fingerprint);
+	}
+
+	/*
+	 * Expands the key values again with changed variables. A changed variable that is a
+	 * key seals the value of the last key value with the key.
+	 */
+	static KeyValues reexpand(KeyValues keyValues, Map<String, String> changedVariables) {
+		if (!(keyValues instanceof ListKeyValues kvs) || kvs.expansion() == null) {
+			return keyValues.expand(Variables.builder().add(Map.copyOf(changedVariables)).build());
+		}
+		if (changedVariables.isEmpty()) {
+			return keyValues;
+		}
+		return Objects.requireNonNull(kvs.expansion()).reexpand(kvs.keyValues(), kvs.fingerprint(), changedVariables);
+	}
+
+	/*
+	 * The last occurrence of a key.
+	 */
+	private static Function<String, @Nullable Occurrence> keys(KeyValuesIndex index, Occurrence[] occurrences) {
+		return key -> {
+			int position = index.lastIndexOf(key);
+			return position < 0 ? null : occurrences[position];
+		};
+	}
+
+	/*
+	 * Resolves the value of the occurrence and all the occurrences it references.
+	 */
+	String resolve(Occurrence occurrence) {
+		return resolve(occurrence, path);
+	}
+
+	private void resolveAll(Occurrence[] occurrences, boolean parallel) {
+		int[][] graph = new int[occurrences.length][];
+		for (var occurrence : occurrences) {
+			graph[occurrence.index()] = references(occurrence);
+		}
+		var components = Components.of(graph);
+		if (!parallel) {
+			for (int index : components.order()) {
+				resolve(occurrences[index], path);
+			}
+			return;
+		}
+		/*
+		 * Each level only references lower levels so the occurrences of a level can be
+		 * resolved in parallel. Cycles or references we could not see up front are
+		 * resolved on demand in which case the same value might be resolved twice.
+		 */
+		for (int[] level : components.levels(graph)) {
+			Arrays.stream(level).parallel().forEach(index -> resolve(occurrences[index], new Path()));
+		}
+	}
+
+	private int[] references(Occurrence occurrence) {
+		var template = occurrence.template();
+		if (template == null || !isInterpolated(occurrence.keyValue(), local)) {
+			return new int[0];
+		}
+		Set<String> names = template.variables();
+		int[] references = new int[names.size()];
+		int count = 0;
+		for (String name : names) {
+			var target = reference(occurrence, name);
+			if (target != null) {
+				references[count++] = target.index();
+			}
+		}
+		return count == references.length ? references : Arrays.copyOf(references, count);
+	}
+
+	private @Nullable Occurrence reference(Occurrence occurrence, String name) {
+		return name.equals(occurrence.key()) ? occurrence.previous() : keys.apply(name);
+	}
+
+	private static boolean isInterpolated(KeyValue kv, boolean local) {
+		/*
+		 * We allow sensitive to be interpolated locally. The assumption here is when the
+		 * local flag is passed all the key values passed are from the same resource.
+		 */
+		return !(kv.isNoInterpolation() || (kv.isSensitive() && !local));
+	}
+
+	private String resolve(Occurrence occurrence, Path path) {
+		String value = value(occurrence);
+		if (value != null) {
+			return value;
+		}
+		var kv = occurrence.keyValue();
+		var template = occurrence.template();
+		if (!isInterpolated(kv, local)) {
+			value = kv.value();
+		}
+		else if (template == null) {
+			value = kv.raw();
+		}
+		else {
+			Set<String> names = template.variables();
+			var dynamic = this.dynamic;
+			int index = occurrence.index();
+			path.push(occurrence);
+			try {
+				Interpolator sub = Interpolator.create(name -> {
+					if (dynamic != null && !names.contains(name)) {
+						dynamic.accept(index);
+					}
+					var target = reference(occurrence, name);
+					return target == null ? null : resolve(target, path);
+				}, dynamic == null ? variables : name -> {
+					if (!names.contains(name)) {
+						dynamic.accept(index);
+					}
+					return variables.getValue(name);
+				}, templates);
+				value = sub.interpolate(kv.key(), template);
+			}
+			finally {
+				path.pop();
+			}
+		}
+		if (values != null) {
+			values[occurrence.index()] = value;
+		}
+		else {
+			resolved.put(occurrence, value);
+		}
+		return value;
+	}
+
+	private @Nullable String value(Occurrence occurrence) {
+		var values = this.values;
+		if (values != null) {
+			return values[occurrence.index()];
+		}
+		var reuse = this.reuse;
+		var dirty = this.dirty;
+		if (reuse != null && dirty != null && !dirty.get(occurrence.index())) {
+			return reuse.get(occurrence.index()).value();
+		}
+		return resolved.get(occurrence);
+	}
+
+	/*
+	 * What is needed to expand key values again when some variables change. The reverse
+	 * index from names to the key values whose templates reference them is only built the
+	 * first time key values are expanded again and then shared with the following
+	 * expansions as the raw values do not change.
+	 */
+	static final class Expansion {
+
+		/*
+		 * Occurrences of keys sealed by changed variables are replaced.
+		 */
+		private final Occurrence[] occurrences;
+
+		private final KeyValuesIndex index;
+
+		private final Variables variables;
+
+		/*
+		 * All the changed variables so far which take precedence over the variables.
+		 */
+		private final Map<String, String> changed;
+
+		private final boolean local;
+
+		/*
+		 * Key values that are always expanded again because we cannot know up front what
+		 * they reference.
+		 */
+		private final BitSet dynamic;
+
+		private volatile @Nullable Map<String, int[]> dependents;
+
+		Expansion(Occurrence[] occurrences, KeyValuesIndex index, Variables variables, Map<String, String> changed,
+				boolean local, BitSet dynamic, @Nullable Map<String, int[]> dependents) {
+			this.occurrences = occurrences;
+			this.index = index;
+			this.variables = variables;
+			this.changed = changed;
+			this.local = local;
+			this.dynamic = dynamic;
+			this.dependents = dependents;
+		}
+
+		/*
+		 * The fingerprint is updated with only the key values that changed.
+		 */
+		ListKeyValues reexpand(List<KeyValue> current, long fingerprint, Map<String, String> changedVariables) {
+			Map<String, String> changed = new HashMap<>(this.changed);
+			changed.putAll(changedVariables);
+			Occurrence[] occurrences = this.occurrences;
+			BitSet dirty = new BitSet(occurrences.length);
+			Set<String> names = new HashSet<>();
+			ArrayDeque<String> queue = new ArrayDeque<>();
+			for (var e : changedVariables.entrySet()) {
+				String name = e.getKey();
+				int position = index.lastIndexOf(name);
+				if (position >= 0) {
+					var occurrence = occurrences[position];
+					var kv = occurrence.keyValue().withSealedValue(e.getValue());
+					if (occurrences == this.occurrences) {
+						occurrences = occurrences.clone();
+					}
+					occurrences[position] = new Occurrence(kv, occurrence.previous(), position);
+					dirty.set(position);
+				}
+				if (names.add(name)) {
+					queue.add(name);
+				}
+			}
+			for (int i = dynamic.nextSetBit(0); i >= 0; i = dynamic.nextSetBit(i + 1)) {
+				dirty.set(i);
+				if (names.add(occurrences[i].key())) {
+					queue.add(occurrences[i].key());
+				}
+			}
+			/*
+			 * Everything that references a changed name directly or through other keys.
+			 */
+			var dependents = dependents();
+			String name;
+			while ((name = queue.poll()) != null) {
+				int[] indexes = dependents.get(name);
+				if (indexes == null) {
+					continue;
+				}
+				for (int index : indexes) {
+					if (!dirty.get(index)) {
+						dirty.set(index);
+						String key = occurrences[index].key();
+						if (names.add(key)) {
+							queue.add(key);
+						}
+					}
+				}
+			}
+
+			int[] nodes = dirty.stream().toArray();
+			BitSet dynamic = (BitSet) this.dynamic.clone();
+			var interpolator = new KeyValuesInterpolator(keys(index, occurrences),
+					Variables.builder().add(changed).add(variables).build(), local, null, current, dirty, dynamic::set);
+			/*
+			 * Only the dirty key values are sorted and resolved.
+			 */
+			int[][] graph = new int[nodes.length][];
+			for (int i = 0; i < nodes.length; i++) {
+				int[] references = interpolator.references(occurrences[nodes[i]]);
+				int count = 0;
+				for (int reference : references) {
+					int node = Arrays.binarySearch(nodes, reference);
+					if (node >= 0) {
+						references[count++] = node;
+					}
+				}
+				graph[i] = Arrays.copyOf(references, count);
+			}
+			for (int node : Components.of(graph).order()) {
+				interpolator.resolve(occurrences[nodes[node]]);
+			}
+
+			List<KeyValue> expanded = new ArrayList<>(current);
+			for (int index : nodes) {
+				var occurrence = occurrences[index];
+				var previous = current.get(index);
+				var kv = occurrence == this.occurrences[index] ? previous : occurrence.keyValue();
+				kv = kv.withExpanded(interpolator.resolve(occurrence));
+				expanded.set(index, kv);
+				if (kv != previous) {
+					fingerprint += KeyValuesFingerprint.of(index, kv) - KeyValuesFingerprint.of(index, previous);
+				}
+			}
+			var expansion = new Expansion(occurrences, index, variables, changed, local, dynamic, dependents);
+			return new ListKeyValues(expanded, expansion, index, fingerprint);
+		}
+
+		private Map<String, int[]> dependents() {
+			var dependents = this.dependents;
+			if (dependents == null) {
+				this.dependents = dependents = dependents(occurrences, local);
+			}
+			return dependents;
+		}
+
+		/*
+		 * The reverse index of which key values reference a name. References to a key are
+		 * by name so a key value is dirty if any key value with the key it references
+		 * changes.
+		 */
+		private static Map<String, int[]> dependents(Occurrence[] occurrences, boolean local) {
+			Map<String, int[]> counts = new HashMap<>();
+			for (var occurrence : occurrences) {
+				for (String name : names(occurrence, local)) {
+					counts.computeIfAbsent(name, n -> new int[1])[0]++;
+				}
+			}
+			Map<String, int[]> dependents = new HashMap<>(counts.size() * 2);
+			for (var e : counts.entrySet()) {
+				dependents.put(e.getKey(), new int[e.getValue()[0]]);
+				e.getValue()[0] = 0;
+			}
+			for (var occurrence : occurrences) {
+				for (String name : names(occurrence, local)) {
+					dependents.get(name)[counts.get(name)[0]++] = occurrence.index();
+				}
+			}
+			return dependents;
+		}
+
+		private static Set<String> names(Occurrence occurrence, boolean local) {
+			var template = occurrence.template();
+			if (template == null || !isInterpolated(occurrence.keyValue(), local)) {
+				return Set.of();
+			}
+			return template.variables();
+		}
+
+	}
+
+	/*
+	 * The key values currently being resolved used to detect and report cycles.
+	 */
+	private static final class Path {
+
+		private final List<Occurrence> occurrences = new ArrayList<>();
+
+		private final Set<Occurrence> set = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		void push(Occurrence occurrence) {
+			if (!set.add(occurrence)) {
+				var cycle = occurrences.subList(occurrences.indexOf(occurrence), occurrences.size());
+				StringBuilder sb = new StringBuilder();
+				for (var o : cycle) {
+					sb.append(o.key()).append("->");
+				}
+				sb.append(occurrence.key());
+				var kv = occurrence.keyValue();
+				throw new InterpolationException(
+						"Infinite recursion for key. key: '" + kv.key() + "', reason: '"
+								+ "Infinite loop in key references: " + sb + "'" + ", raw: '" + kv.raw() + "'",
+						kv.key(), kv.raw());
+			}
+			occurrences.add(occurrence);
+		}
+
+		void pop() {
+			set.remove(occurrences.remove(occurrences.size() - 1));
+		}
+
+	}
+
+	/*
+	 * The strongly connected components of a graph where the order has the nodes of each
+	 * component together and a component after the components it references.
+	 */
+	record Components(int[] order, int[] component) {
+
+		/*
+		 * Tarjan's algorithm without recursion because reference chains can be very deep.
+		 * The graph is an array of the referenced nodes of each node.
+		 */
+		static Components of(int[][] graph) {
+			int size = graph.length;
+			int[] index = new int[size];
+			Arrays.fill(index, -1);
+			int[] low = new int[size];
+			boolean[] onStack = new boolean[size];
+			int[] stack = new int[size];
+			int stackSize = 0;
+			int[] callStack = new int[size];
+			int[] nextEdge = new int[size];
+			int[] order = new int[size];
+			int[] component = new int[size];
+			int orderSize = 0;
+			int components = 0;
+			int counter = 0;
+			for (int start = 0; start < size; start++) {
+				if (index[start] != -1) {
+					continue;
+				}
+				int depth = 0;
+				callStack[depth] = start;
+				nextEdge[depth++] = 0;
+				index[start] = low[start] = counter++;
+				stack[stackSize++] = start;
+				onStack[start] = true;
+				while (depth > 0) {
+					int node = callStack[depth - 1];
+					int[] edges = graph[node];
+					if (nextEdge[depth - 1] < edges.length) {
+						int next = edges[nextEdge[depth - 1]++];
+						if (index[next] == -1) {
+							index[next] = low[next] = counter++;
+							stack[stackSize++] = next;
+							onStack[next] = true;
+							callStack[depth] = next;
+							nextEdge[depth++] = 0;
+						}
+						else if (onStack[next]) {
+							low[node] = Math.min(low[node], index[next]);
+						}
+						continue;
+					}
+					depth--;
+					if (depth > 0) {
+						int parent = callStack[depth - 1];
+						low[parent] = Math.min(low[parent], low[node]);
+					}
+					if (low[node] == index[node]) {
+						int member;
+						/*
+						 * The stack has the members in the order they were found.
+						 */
+						int first = stackSize;
+						do {
+							member = stack[--first];
+							onStack[member] = false;
+							component[member] = components;
+						}
+						while (member != node);
+						for (int i = first; i < stackSize; i++) {
+							order[orderSize++] = stack[i];
+						}
+						stackSize = first;
+						components++;
+					}
+				}
+			}
+			return new Components(order, component);
+		}
+
+		/*
+		 * Groups the nodes by the longest path of references to nodes of other
+		 * components.
+		 */
+		List<int[]> levels(int[][] graph) {
+			int size = order.length;
+			int[] levels = new int[size];
+			int[] counts = new int[size + 1];
+			int maxLevel = 0;
+			int start = 0;
+			while (start < size) {
+				int c = component[order[start]];
+				int end = start;
+				int level = 0;
+				while (end < size && component[order[end]] == c) {
+					for (int next : graph[order[end]]) {
+						if (component[next] != c) {
+							level = Math.max(level, levels[next] + 1);
+						}
+					}
+					end++;
+				}
+				for (int i = start; i < end; i++) {
+					levels[order[i]] = level;
+				}
+				counts[level] += end - start;
+				maxLevel = Math.max(maxLevel, level);
+				start = end;
+			}
+			List<int[]> result = new ArrayList<>(maxLevel + 1);
+			int[] filled = new int[maxLevel + 1];
+			for (int level = 0; level <= maxLevel; level++) {
+				result.add(new int[counts[level]]);
+			}
+			for (int node : order) {
+				int level = levels[node];
+				result.get(level)[filled[level]++] = node;
+			}
+			return result;
+		}
+
+	}
+
+}
@@ -7,9 +7,12 @@ import java.net.URI;
 import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+import org.jspecify.annotations.Nullable;
+
 /**
  * Represents a loader responsible for loading {@link KeyValues} from configured sources.
  * This interface defines the contract for loading key-value pairs, potentially involving
@@ -62,6 +65,13 @@ public interface KeyValuesLoader {
 
 		private String namePrefix = "root";
 
+		boolean concurrent = false;
+
+		@Nullable
+		Executor executor;
+
+		int cacheSize = ResourceCache.DEFAULT_MAX_SIZE;
+
 		Builder(Function<Builder, KeyValuesLoader> loaderFactory) {
 			super();
 			this.loaderFactory = loaderFactory;
@@ -173,6 +183,63 @@ public interface KeyValuesLoader {
 			return this;
 		}
 
+		/**
+		 * Enables fetching and parsing of sibling resources concurrently on virtual
+		 * threads. Siblings are the resources added to this builder as well as resources
+		 * found from the same parent resource such as multiple <code>_load_</code> keys
+		 * or the children of <code>classpaths</code> and <code>profile.</code> resources.
+		 * <p>
+		 * Only resources whose loading does not depend on variables, such as file and
+		 * classpath resources, are fetched ahead of time. Interpolation, filtering and
+		 * merging of key values still happen in the original order so the loaded key
+		 * values and logging are the same as sequential loading. If a very large number
+		 * of key values is loaded the key values that do not reference each other are
+		 * interpolated in parallel on the common
+		 * {@link java.util.concurrent.ForkJoinPool}.
+		 * @param concurrent true to fetch sibling resources concurrently. Default is
+		 * false.
+		 * @return this
+		 * @see #executor(Executor)
+		 */
+		public Builder concurrent(boolean concurrent) {
+			this.concurrent = concurrent;
+			return this;
+		}
+
+		/**
+		 * Like {@link #concurrent(boolean)} but sibling resources are fetched with the
+		 * passed in executor instead of virtual threads. The executor is not shutdown by
+		 * the loader.
+		 * @param executor used to fetch sibling resources or <code>null</code> to use
+		 * {@link #concurrent(boolean)}.
+		 * @return this
+		 */
+		public Builder executor(@Nullable Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of resources whose parsed key values are kept by the
+		 * built loader between calls to {@link KeyValuesLoader#load()}. When the loader
+		 * loads again, file resources whose modification time and size have not changed
+		 * and classpath or jar resources whose content digest has not changed are not
+		 * parsed again. Resources flagged with {@value KeyValuesResource#FLAG_NO_RELOAD}
+		 * are not fetched again at all. Interpolation and filtering always happen on
+		 * every load. The least recently used resources are evicted once the size is
+		 * exceeded.
+		 * @param cacheSize maximum number of cached resources. <code>0</code> disables
+		 * caching. Default is <code>128</code>.
+		 * @return this
+		 */
+		public Builder cacheSize(int cacheSize) {
+			if (cacheSize < 0) {
+				throw new IllegalArgumentException("cacheSize must not be negative");
+			}
+			this.cacheSize = cacheSize;
+			return this;
+		}
+
 		/**
 		 * Builds and returns a new {@link KeyValuesLoader} based on the current state of
 		 * the builder.
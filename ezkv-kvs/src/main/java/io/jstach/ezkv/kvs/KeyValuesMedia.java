@@ -6,7 +6,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.function.BiConsumer;
@@ -222,10 +224,80 @@ public interface KeyValuesMedia extends KeyValuesMediaFinder {
 			return b.build();
 		}
 
+		/**
+		 * Parses key-value pairs from the remaining bytes of a buffer and applies them to
+		 * a consumer. The loader uses this for small files which are read whole into a
+		 * pooled direct buffer so that the raw bytes are not copied onto the heap. Larger
+		 * files are streamed. The buffer is only valid for the duration of the call and
+		 * must not be kept or modified.
+		 * <p>
+		 * The default implementation reads the buffer as an input stream with
+		 * {@link #parse(InputStream, BiConsumer)}. Parsers that can decode the buffer
+		 * directly or that decode the whole input anyway should override this as well as
+		 * {@link #parse(KeyValuesResource, ByteBuffer)}.
+		 * @param input the buffer to read from starting at its position
+		 * @param consumer the consumer to apply the parsed key-value pairs
+		 * @throws IOException if an I/O error occurs during parsing
+		 */
+		default void parse(ByteBuffer input, BiConsumer<String, String> consumer) throws IOException {
+			parse(byteBufferToInputStream(input), consumer);
+		}
+
+		/**
+		 * Parses key-value pairs from the remaining bytes of a buffer and associates them
+		 * with a given resource.
+		 * <p>
+		 * The default implementation reads the buffer as an input stream with
+		 * {@link #parse(KeyValuesResource, InputStream)} so that parsers overriding that
+		 * method keep working for files. Parsers that override
+		 * {@link #parse(ByteBuffer, BiConsumer)} opt into the buffer by overriding this
+		 * too.
+		 * @param source the resource from which the key-values are sourced
+		 * @param input the buffer to read from starting at its position
+		 * @return a {@code KeyValues} instance containing the parsed key-value pairs
+		 * @throws IOException if an I/O error occurs during parsing
+		 * @see #parse(ByteBuffer, BiConsumer)
+		 */
+		default KeyValues parse(KeyValuesResource source, ByteBuffer input) throws IOException {
+			return parse(source, byteBufferToInputStream(input));
+		}
+
 		private static InputStream stringToInputStream(String s) {
 			return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
 		}
 
+		/*
+		 * Reads a duplicate so the position of the callers buffer is left alone.
+		 */
+		private static InputStream byteBufferToInputStream(ByteBuffer input) {
+			var buffer = input.duplicate();
+			return new InputStream() {
+				@Override
+				public int read() {
+					return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					Objects.checkFromIndexSize(off, len, b.length);
+					if (len == 0) {
+						return 0;
+					}
+					if (!buffer.hasRemaining()) {
+						return -1;
+					}
+					int n = Math.min(len, buffer.remaining());
+					buffer.get(b, off, n);
+					return n;
+				}
+
+				@Override
+				public int available() {
+					return buffer.remaining();
+				}
+			};
+		}
+
 	}
 
 	/**
@@ -360,6 +432,34 @@ class SafeParser implements KeyValuesMedia.Parser {
 		return delegate.parse(input);
 	}
 
+	@Override
+	public void parse(ByteBuffer input, BiConsumer<String, String> consumer) throws IOException {
+		try {
+			delegate.parse(input, consumer);
+		}
+		catch (KeyValuesException e) {
+			throw e;
+		}
+		catch (RuntimeException e) {
+			String message = "Parsing failed. mediaType=" + mediaType + e.toString();
+			throw new KeyValuesMediaException(message, e, mediaType);
+		}
+	}
+
+	@Override
+	public KeyValues parse(KeyValuesResource source, ByteBuffer input) throws IOException {
+		try {
+			return delegate.parse(source, input);
+		}
+		catch (KeyValuesException e) {
+			throw e;
+		}
+		catch (RuntimeException e) {
+			String message = "Parsing failed for mediaType='" + mediaType + "'. " + e.getMessage();
+			throw new KeyValuesMediaException(message, e, mediaType);
+		}
+	}
+
 	public SafeParser(Parser delegate, String mediaType) {
 		super();
 		this.delegate = delegate;
@@ -300,7 +300,10 @@ public sealed interface KeyValuesResource extends NamedKeyValuesSource, KeyValue
 	public static final String FLAG_NO_FILTER_RESOURCE_KEYS = "NO_FILTER_RESOURCE_KEYS";
 
 	/**
-	 * Specifies that the resource should not be reloaded once it has been loaded.
+	 * Specifies that the resource should not be reloaded once it has been loaded. If the
+	 * same {@link KeyValuesLoader} is used to load again the key values of the resource
+	 * from the previous load are reused without fetching the resource.
+	 * @see KeyValuesLoader.Builder#cacheSize(int)
 	 */
 	public static final String FLAG_NO_RELOAD = "NO_RELOAD";
 
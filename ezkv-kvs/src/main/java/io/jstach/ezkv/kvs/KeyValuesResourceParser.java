@@ -38,6 +38,41 @@ sealed interface KeyValuesResourceParser permits DefaultKeyValuesResourceParser
 	List<? extends InternalKeyValuesResource> parseResources(KeyValues keyValues, Set<LoadFlag> loadFlags)
 			throws KeyValuesResourceParserException;
 
+	/**
+	 * Partitions the key values in one pass into the key values that are not resource
+	 * keys and the resource keys grouped by resource name. This is preferred over calling
+	 * {@link #parseResources(KeyValues, Set)} and {@link #filterResources(KeyValues)}
+	 * separately as each of those partition the key values.
+	 * @param keyValues the key-values to partition.
+	 * @return partitioned key values.
+	 */
+	Partition partition(KeyValues keyValues);
+
+	/**
+	 * Key values partitioned into key values that are not resource keys and resources.
+	 */
+	interface Partition {
+
+		/**
+		 * The key values that are not resource keys.
+		 * @return key values with resource keys removed.
+		 * @see KeyValuesResourceParser#filterResources(KeyValues)
+		 */
+		KeyValues keyValues();
+
+		/**
+		 * The resources that should be loaded in the order of their load keys.
+		 * @param loadFlags loadFlags to be inherited.
+		 * @return a list of resources parsed from the key-values
+		 * @throws KeyValuesResourceParserException if key values has an incorrect
+		 * resource key format.
+		 * @see KeyValuesResourceParser#parseResources(KeyValues, Set)
+		 */
+		List<? extends InternalKeyValuesResource> resources(Set<LoadFlag> loadFlags)
+				throws KeyValuesResourceParserException;
+
+	}
+
 	// TODO we should probably make a ParsedKeyValuesResource or
 	// NormalizedKeyValuesResource
 	// For now Internal is doing double duty.
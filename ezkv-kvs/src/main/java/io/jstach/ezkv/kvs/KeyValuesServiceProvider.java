@@ -3,9 +3,11 @@ package io.jstach.ezkv.kvs;
 import java.io.FileNotFoundException;
 import java.net.URI;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -472,14 +474,21 @@ sealed interface Context {
 }
 
 record DefaultLoaderContext(KeyValuesEnvironment environment, KeyValuesMediaFinder mediaFinder, Variables variables,
-		KeyValuesResourceParser resourceParser,
-		List<? extends KeyValuesProvider> providers) implements LoaderContext, ProviderContext {
-	static LoaderContext of(KeyValuesSystem system, Variables variables, KeyValuesResourceParser resourceParser) {
+		KeyValuesResourceParser resourceParser, List<? extends KeyValuesProvider> providers, ResourceCache cache,
+		Consumer<Path> fileTracker) implements LoaderContext, ProviderContext {
+	static LoaderContext of(KeyValuesSystem system, Variables variables, KeyValuesResourceParser resourceParser,
+			ResourceCache cache, Consumer<Path> fileTracker) {
 		List<? extends KeyValuesProvider> providers = switch (system) {
 			case DefaultKeyValuesSystem d -> d.providers();
 		};
 		return new DefaultLoaderContext(system.environment(), system.mediaFinder(), variables, resourceParser,
-				providers);
+				providers, cache, fileTracker);
+	}
+
+	static void trackFile(LoaderContext context, Path path) {
+		switch (context) {
+			case DefaultLoaderContext d -> d.fileTracker.accept(path);
+		}
 	}
 
 	@Override
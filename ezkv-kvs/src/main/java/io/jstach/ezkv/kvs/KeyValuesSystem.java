@@ -99,7 +99,8 @@ public sealed interface KeyValuesSystem extends AutoCloseable {
 			var variables = Variables.copyOf(b.variables.stream().map(vf -> vf.apply(env)).toList());
 			var sources = b.sources.stream().map(s -> s.apply(env)).toList();
 			List<NamedKeyValuesSource> resources = sources.isEmpty() ? List.of(defaultResource) : List.copyOf(sources);
-			return DefaultKeyValuesSourceLoader.of(this, variables, resources);
+			return DefaultKeyValuesSourceLoader.of(this, variables, resources, b.concurrent, b.executor,
+					ResourceCache.of(b.cacheSize));
 		};
 		return new KeyValuesLoader.Builder(loaderFactory);
 	}
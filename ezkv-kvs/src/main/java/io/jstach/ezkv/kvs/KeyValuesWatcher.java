@@ -0,0 +1,336 @@
+package io.jstach.ezkv.kvs;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.jspecify.annotations.Nullable;
+
+import io.jstach.ezkv.kvs.DefaultKeyValuesSourceLoader.ReusableLoader;
+
+/**
+ * Watches the file resources of a {@link KeyValuesLoader} and loads again when any of
+ * them change. Every file the loader tries to open is watched including children found
+ * through <code>_load_</code> keys and optional files that do not exist yet. Bursts of
+ * file changes are debounced and the reload happens on a background thread after which
+ * the new {@link KeyValues} are published to the listeners.
+ * <p>
+ * Example usage:
+ * {@snippet :
+ * var loader = KeyValuesSystem.defaults() //
+ * 	.loader() //
+ * 	.add("file:./app.properties") //
+ * 	.build();
+ * try (var watcher = KeyValuesWatcher.builder(loader).listener(kvs -> apply(kvs)).build()) {
+ * 	var current = watcher.current();
+ * 	// ...
+ * }
+ * }
+ *
+ * Only file resources are watched. Resources that are not files are loaded again when a
+ * watched file changes.
+ *
+ * @see KeyValuesLoader.Builder#build()
+ */
+public sealed interface KeyValuesWatcher extends AutoCloseable {
+
+	/**
+	 * The key values of the last successful load.
+	 * @return last loaded key values.
+	 */
+	public KeyValues current();
+
+	/**
+	 * The files that are currently being watched.
+	 * @return absolute paths of watched files.
+	 */
+	public Set<Path> files();
+
+	/**
+	 * Adds a listener that will be notified on future reloads.
+	 * @param listener called on reload or failure.
+	 */
+	public void addListener(Listener listener);
+
+	/**
+	 * Stops watching. Listeners will not be notified after this call returns unless a
+	 * reload is already in progress.
+	 */
+	@Override
+	public void close();
+
+	/**
+	 * Creates a watcher builder.
+	 * @param loader must be a loader created from {@link KeyValuesSystem#loader()}.
+	 * @return builder.
+	 * @throws IllegalArgumentException if the loader was not created by a
+	 * {@link KeyValuesSystem}.
+	 */
+	public static Builder builder(KeyValuesLoader loader) {
+		if (loader instanceof KeyValuesLoader.Builder b) {
+			loader = b.build();
+		}
+		if (!(loader instanceof ReusableLoader reusableLoader)) {
+			throw new IllegalArgumentException("Loader must be created by KeyValuesSystem.loader()");
+		}
+		return new Builder(reusableLoader);
+	}
+
+	/**
+	 * Notified after a watched file changed and the loader was run again.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called on the watcher thread with the newly loaded key values.
+		 * @param keyValues newly loaded key values.
+		 */
+		public void onLoad(KeyValues keyValues);
+
+		/**
+		 * Called on the watcher thread if reloading failed. The previous key values
+		 * remain {@linkplain KeyValuesWatcher#current() current}.
+		 * @param exception the failure.
+		 */
+		default void onError(Exception exception) {
+		}
+
+	}
+
+	/**
+	 * Builds and starts a {@link KeyValuesWatcher}.
+	 */
+	public final class Builder {
+
+		private final ReusableLoader loader;
+
+		private Duration debounce = Duration.ofMillis(100);
+
+		private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+		private Builder(ReusableLoader loader) {
+			this.loader = loader;
+		}
+
+		/**
+		 * How long to wait for file changes to stop before reloading.
+		 * @param debounce quiet period. Default is 100 milliseconds.
+		 * @return this.
+		 */
+		public Builder debounce(Duration debounce) {
+			if (debounce.isNegative()) {
+				throw new IllegalArgumentException("debounce must not be negative");
+			}
+			this.debounce = debounce;
+			return this;
+		}
+
+		/**
+		 * Adds a listener.
+		 * @param listener called on reload or failure.
+		 * @return this.
+		 */
+		public Builder listener(Listener listener) {
+			this.listeners.add(listener);
+			return this;
+		}
+
+		/**
+		 * Loads the key values on the calling thread and then starts watching the files
+		 * that were loaded.
+		 * @return started watcher that should be closed.
+		 * @throws IOException if the initial load fails or the files cannot be watched.
+		 */
+		public KeyValuesWatcher build() throws IOException {
+			var watcher = new DefaultKeyValuesWatcher(loader, debounce, listeners);
+			watcher.start();
+			return watcher;
+		}
+
+	}
+
+}
+
+final class DefaultKeyValuesWatcher implements KeyValuesWatcher {
+
+	private final ReusableLoader loader;
+
+	private final Duration debounce;
+
+	private final List<Listener> listeners;
+
+	private final WatchService watchService;
+
+	private final Map<WatchKey, Path> directories = new HashMap<>();
+
+	private volatile Set<Path> files = Set.of();
+
+	private volatile @Nullable KeyValues current;
+
+	private volatile boolean closed = false;
+
+	DefaultKeyValuesWatcher(ReusableLoader loader, Duration debounce, List<Listener> listeners) throws IOException {
+		this.loader = loader;
+		this.debounce = debounce;
+		this.listeners = listeners;
+		this.watchService = loader.system().environment().getFileSystem().newWatchService();
+	}
+
+	void start() throws IOException {
+		try {
+			reload();
+			Thread.ofVirtual().name("ezkv-watcher").start(this::run);
+		}
+		catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	@Override
+	public KeyValues current() {
+		return Objects.requireNonNull(current);
+	}
+
+	@Override
+	public Set<Path> files() {
+		return files;
+	}
+
+	@Override
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			watchService.close();
+		}
+		catch (IOException e) {
+			loader.system().environment().getLogger().warn("Failed to close watch service. " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Loads and then watches the directories of the files the loader tried to open.
+	 */
+	private KeyValues reload() throws IOException {
+		Set<Path> opened = ConcurrentHashMap.newKeySet();
+		var kvs = loader.load(p -> opened.add(p.toAbsolutePath().normalize()));
+		register(opened);
+		this.current = kvs;
+		return kvs;
+	}
+
+	private void register(Set<Path> opened) throws IOException {
+		var kinds = new WatchEvent.Kind<?>[] { StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE };
+		Set<Path> watchedDirectories = new HashSet<>(directories.values());
+		for (var file : opened) {
+			var dir = file.getParent();
+			if (dir == null || !watchedDirectories.add(dir)) {
+				continue;
+			}
+			try {
+				var key = dir.register(watchService, kinds);
+				directories.put(key, dir);
+			}
+			catch (NoSuchFileException e) {
+				/*
+				 * The directory of an optional file does not exist so we cannot watch it.
+				 */
+				loader.system().environment().getLogger().debug("Cannot watch missing directory: " + dir);
+			}
+		}
+		this.files = Set.copyOf(opened);
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				var key = watchService.take();
+				boolean changed = changed(key);
+				/*
+				 * Debounce by waiting until there are no more events for the debounce
+				 * duration.
+				 */
+				while (!closed && (key = watchService.poll(debounce.toNanos(), TimeUnit.NANOSECONDS)) != null) {
+					changed |= changed(key);
+				}
+				if (changed && !closed) {
+					fire();
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ClosedWatchServiceException e) {
+			// closed
+		}
+	}
+
+	private boolean changed(WatchKey key) {
+		var dir = directories.get(key);
+		boolean changed = false;
+		for (var event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changed = true;
+			}
+			else if (dir != null && event.context() instanceof Path p && files.contains(dir.resolve(p))) {
+				changed = true;
+			}
+		}
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+		return changed;
+	}
+
+	private void fire() {
+		var logger = loader.system().environment().getLogger();
+		KeyValues kvs;
+		try {
+			kvs = reload();
+		}
+		catch (IOException | RuntimeException e) {
+			logger.warn("Reload failed. " + e.getMessage());
+			for (var listener : listeners) {
+				try {
+					listener.onError(e);
+				}
+				catch (RuntimeException le) {
+					logger.warn("Listener failed. " + le.getMessage());
+				}
+			}
+			return;
+		}
+		for (var listener : listeners) {
+			try {
+				listener.onLoad(kvs);
+			}
+			catch (RuntimeException e) {
+				logger.warn("Listener failed. " + e.getMessage());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+package io.jstach.ezkv.kvs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.SequencedMap;
+import java.util.stream.Stream;
+
+import org.jspecify.annotations.Nullable;
+
+/*
+ * Memoized key values made of layers of memoized key values in priority order where the
+ * last layer has the highest priority. Iterating goes through the layers in order which
+ * is the same as if the layers were copied into one list so later keys still override
+ * earlier keys.
+ *
+ * Layers are never copied so key values derived from a large base only cost the layers
+ * that were added. Lookups go from the top layer down using the index of every layer.
+ * To keep lookups fast the two smallest adjacent layers are merged if there are too many
+ * layers which keeps a large base layer shared.
+ */
+final class LayeredKeyValues implements ToStringableKeyValues, MemoizedKeyValues {
+
+	static final int MAX_LAYERS = 8;
+
+	private final List<KeyValues> layers;
+
+	private volatile @Nullable SequencedMap<String, String> map;
+
+	private volatile @Nullable Long fingerprint;
+
+	private LayeredKeyValues(List<KeyValues> layers) {
+		this.layers = layers;
+	}
+
+	static KeyValues of(KeyValues lower, KeyValues upper) {
+		List<KeyValues> layers = new ArrayList<>();
+		addLayers(layers, lower);
+		addLayers(layers, upper);
+		while (layers.size() > MAX_LAYERS) {
+			mergeSmallest(layers);
+		}
+		return switch (layers.size()) {
+			case 0 -> KeyValues.empty();
+			case 1 -> layers.get(0);
+			default -> new LayeredKeyValues(List.copyOf(layers));
+		};
+	}
+
+	private static void addLayers(List<KeyValues> layers, KeyValues keyValues) {
+		if (keyValues instanceof LayeredKeyValues l) {
+			layers.addAll(l.layers);
+			return;
+		}
+		var layer = keyValues.memoize();
+		if (layer.last().isPresent()) {
+			layers.add(layer);
+		}
+	}
+
+	private static void mergeSmallest(List<KeyValues> layers) {
+		int smallest = 0;
+		long smallestSize = Long.MAX_VALUE;
+		for (int i = 0; i < layers.size() - 1; i++) {
+			long size = layers.get(i).stream().count() + layers.get(i + 1).stream().count();
+			if (size < smallestSize) {
+				smallest = i;
+				smallestSize = size;
+			}
+		}
+		var merged = Stream.concat(layers.get(smallest).stream(), layers.get(smallest + 1).stream()).toList();
+		layers.set(smallest, new ListKeyValues(merged));
+		layers.remove(smallest + 1);
+	}
+
+	/*
+	 * The layers from lowest to highest priority.
+	 */
+	List<KeyValues> layers() {
+		return layers;
+	}
+
+	@Override
+	public Stream<KeyValue> stream() {
+		return layers.stream().flatMap(KeyValues::stream);
+	}
+
+	@Override
+	public KeyValues memoize() {
+		return this;
+	}
+
+	@Override
+	public Optional<KeyValue> last() {
+		return layers.getLast().last();
+	}
+
+	@Override
+	public @Nullable KeyValue get(String key) {
+		for (var layer : layers.reversed()) {
+			var kv = layer.get(key);
+			if (kv != null) {
+				return kv;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * The highest priority layer with the key.
+	 */
+	@Nullable
+	KeyValues layerOf(String key) {
+		for (var layer : layers.reversed()) {
+			if (layer.contains(key)) {
+				return layer;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean contains(String key) {
+		for (var layer : layers) {
+			if (layer.contains(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public SequencedMap<String, String> toMap() {
+		var map = this.map;
+		if (map == null) {
+			SequencedMap<String, String> m = new LinkedHashMap<>();
+			for (var layer : layers) {
+				m.putAll(layer.toMap());
+			}
+			this.map = map = Collections.unmodifiableSequencedMap(m);
+		}
+		return map;
+	}
+
+	@Override
+	public long fingerprint() {
+		var fingerprint = this.fingerprint;
+		if (fingerprint == null) {
+			this.fingerprint = fingerprint = KeyValuesFingerprint.of(this);
+		}
+		return fingerprint;
+	}
+
+	@Override
+	public String toString() {
+		return ToStringableKeyValues.toString(this);
+	}
+
+}
@@ -0,0 +1,174 @@
+package io.jstach.ezkv.kvs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import org.jspecify.annotations.Nullable;
+
+/*
+ * The result of map, filter or flatMap. Consecutive stages that have not been iterated
+ * yet are fused so that iterating runs all the stages in one pass over the source. The
+ * result of every stage in the pass is memoized so that every function is called at
+ * most once per key value even if a stage and the stages after it are iterated. Once
+ * run a stage is a boundary and stages added after it start from its memo.
+ *
+ * Stages of the same pass share a lock so that concurrent iteration does not run the
+ * functions twice. We use a lock instead of synchronized because key values can be
+ * loaded on virtual threads.
+ */
+final class PipelineKeyValues implements ToStringableKeyValues {
+
+	private final KeyValues source;
+
+	private final @Nullable PipelineKeyValues parent;
+
+	private final Stage stage;
+
+	private final ReentrantLock lock;
+
+	private volatile @Nullable ListKeyValues memo;
+
+	sealed interface Stage {
+
+		record Map(UnaryOperator<KeyValue> function) implements Stage {
+		}
+
+		record Filter(Predicate<KeyValue> predicate) implements Stage {
+		}
+
+		record FlatMap(Function<KeyValue, KeyValues> function) implements Stage {
+		}
+
+	}
+
+	private PipelineKeyValues(KeyValues source, @Nullable PipelineKeyValues parent, Stage stage, ReentrantLock lock) {
+		this.source = source;
+		this.parent = parent;
+		this.stage = stage;
+		this.lock = lock;
+	}
+
+	static KeyValues of(KeyValues keyValues, Stage stage) {
+		if (keyValues instanceof PipelineKeyValues p && p.memo == null) {
+			return new PipelineKeyValues(p.source, p, stage, p.lock);
+		}
+		return new PipelineKeyValues(keyValues, null, stage, new ReentrantLock());
+	}
+
+	@Override
+	public Stream<KeyValue> stream() {
+		return materialize().stream();
+	}
+
+	@Override
+	public Iterator<KeyValue> iterator() {
+		return materialize().iterator();
+	}
+
+	@Override
+	public KeyValues memoize() {
+		return materialize();
+	}
+
+	@Override
+	public @Nullable KeyValue get(String key) {
+		return materialize().get(key);
+	}
+
+	@Override
+	public boolean contains(String key) {
+		return materialize().contains(key);
+	}
+
+	@Override
+	public long fingerprint() {
+		return materialize().fingerprint();
+	}
+
+	@Override
+	public String toString() {
+		return ToStringableKeyValues.toString(this);
+	}
+
+	private ListKeyValues materialize() {
+		var memo = this.memo;
+		if (memo != null) {
+			return memo;
+		}
+		lock.lock();
+		try {
+			memo = this.memo;
+			if (memo == null) {
+				run();
+				memo = this.memo;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		if (memo == null) {
+			throw new IllegalStateException("bug");
+		}
+		return memo;
+	}
+
+	/*
+	 * Runs this stage and the stages before it that have not been run in one pass
+	 * starting from the last stage that has a memo or the source.
+	 */
+	private void run() {
+		List<PipelineKeyValues> stages = new ArrayList<>();
+		KeyValues input = source;
+		for (PipelineKeyValues p = this; p != null; p = p.parent) {
+			var m = p.memo;
+			if (m != null) {
+				input = m;
+				break;
+			}
+			stages.add(0, p);
+		}
+		List<List<KeyValue>> outputs = new ArrayList<>(stages.size());
+		for (int i = 0; i < stages.size(); i++) {
+			outputs.add(new ArrayList<>());
+		}
+		for (var kv : input) {
+			push(stages, outputs, 0, kv);
+		}
+		for (int i = 0; i < stages.size(); i++) {
+			stages.get(i).memo = new ListKeyValues(outputs.get(i));
+		}
+	}
+
+	private static void push(List<PipelineKeyValues> stages, List<List<KeyValue>> outputs, int i, KeyValue kv) {
+		if (i == stages.size()) {
+			return;
+		}
+		var output = outputs.get(i);
+		switch (stages.get(i).stage) {
+			case Stage.Map m -> {
+				var result = m.function().apply(kv);
+				output.add(result);
+				push(stages, outputs, i + 1, result);
+			}
+			case Stage.Filter f -> {
+				if (f.predicate().test(kv)) {
+					output.add(kv);
+					push(stages, outputs, i + 1, kv);
+				}
+			}
+			case Stage.FlatMap fm -> {
+				for (var result : fm.function().apply(kv)) {
+					output.add(result);
+					push(stages, outputs, i + 1, result);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,341 @@
+package io.jstach.ezkv.kvs;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+import org.jspecify.annotations.Nullable;
+
+/*
+ * Reads the java.util.Properties format straight into a consumer in the order the keys
+ * appear which is why we do not use Properties.load. Properties.load goes through a
+ * synchronized Hashtable and we used to override put to see the keys which was a hack.
+ *
+ * The rules are the same as Properties.load(Reader):
+ *
+ * - Lines end with \n, \r or \r\n and leading whitespace (space, tab and form feed) is
+ *   ignored.
+ * - Blank lines and lines starting with # or ! are ignored.
+ * - A line ending with an odd number of backslashes continues on the next line with the
+ *   leading whitespace of the next line removed. Comment lines do not continue.
+ * - The key ends at the first unescaped =, : or whitespace. Whitespace and at most one =
+ *   or : after the key are skipped and the rest of the line is the value.
+ * - \t, \n, \r, \f and \\uXXXX are escapes and any other escaped character is the
+ *   character itself. A malformed \\uXXXX is an IllegalArgumentException like the JDK.
+ *
+ * The logical line and the converted key and value reuse buffers so the only allocation
+ * per key value is the two strings.
+ */
+final class PropertiesLexer {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final @Nullable Reader reader;
+
+	private final char[] buffer;
+
+	private int position;
+
+	private int limit;
+
+	private char[] line = new char[256];
+
+	private char[] converted = new char[256];
+
+	private PropertiesLexer(@Nullable Reader reader, char[] buffer, int position, int limit) {
+		this.reader = reader;
+		this.buffer = buffer;
+		this.position = position;
+		this.limit = limit;
+	}
+
+	static void parse(Reader reader, BiConsumer<String, String> consumer) throws IOException {
+		new PropertiesLexer(reader, new char[BUFFER_SIZE], 0, 0).parse(consumer);
+	}
+
+	static void parse(String input, BiConsumer<String, String> consumer) {
+		char[] chars = input.toCharArray();
+		parse(chars, 0, chars.length, consumer);
+	}
+
+	/*
+	 * The UTF-8 bytes are decoded in chunks into the char buffer of the lexer so the
+	 * whole input is never decoded at once. The position of the buffer is left alone.
+	 */
+	static void parse(ByteBuffer input, BiConsumer<String, String> consumer) {
+		try {
+			parse(new ByteBufferReader(input.duplicate()), consumer);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("bug", e);
+		}
+	}
+
+	private static void parse(char[] chars, int position, int limit, BiConsumer<String, String> consumer) {
+		try {
+			new PropertiesLexer(null, chars, position, limit).parse(consumer);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("bug", e);
+		}
+	}
+
+	private void parse(BiConsumer<String, String> consumer) throws IOException {
+		int length;
+		while ((length = readLine()) >= 0) {
+			int keyLength = 0;
+			int valueStart = length;
+			boolean hasSeparator = false;
+			boolean precedingBackslash = false;
+			while (keyLength < length) {
+				char c = line[keyLength];
+				if (!precedingBackslash) {
+					if (c == '=' || c == ':') {
+						valueStart = keyLength + 1;
+						hasSeparator = true;
+						break;
+					}
+					if (isWhitespace(c)) {
+						valueStart = keyLength + 1;
+						break;
+					}
+				}
+				precedingBackslash = c == '\\' && !precedingBackslash;
+				keyLength++;
+			}
+			while (valueStart < length) {
+				char c = line[valueStart];
+				if (!isWhitespace(c)) {
+					if (hasSeparator || (c != '=' && c != ':')) {
+						break;
+					}
+					hasSeparator = true;
+				}
+				valueStart++;
+			}
+			String key = convert(0, keyLength);
+			String value = convert(valueStart, length);
+			consumer.accept(key, value);
+		}
+	}
+
+	/*
+	 * Reads the next logical line into the line buffer with continuations joined but
+	 * escapes left as is. Returns the length or -1 if there are no more lines.
+	 */
+	private int readLine() throws IOException {
+		int length = 0;
+		boolean skipWhitespace = true;
+		boolean continued = false;
+		boolean newLine = true;
+		boolean precedingBackslash = false;
+		boolean skipLineFeed = false;
+		int c;
+		while ((c = read()) >= 0) {
+			if (skipLineFeed) {
+				skipLineFeed = false;
+				if (c == '\n') {
+					continue;
+				}
+			}
+			if (skipWhitespace) {
+				if (isWhitespace(c)) {
+					continue;
+				}
+				if (!continued && (c == '\r' || c == '\n')) {
+					continue;
+				}
+				skipWhitespace = false;
+				continued = false;
+			}
+			if (newLine) {
+				newLine = false;
+				if (c == '#' || c == '!') {
+					skipComment();
+					newLine = true;
+					skipWhitespace = true;
+					continue;
+				}
+			}
+			if (c != '\n' && c != '\r') {
+				if (length == line.length) {
+					line = Arrays.copyOf(line, length * 2);
+				}
+				line[length++] = (char) c;
+				precedingBackslash = c == '\\' && !precedingBackslash;
+				continue;
+			}
+			if (length == 0) {
+				newLine = true;
+				skipWhitespace = true;
+				continue;
+			}
+			if (!precedingBackslash) {
+				/*
+				 * A \n after a \r is skipped as leading whitespace of the next line.
+				 */
+				return length;
+			}
+			length--;
+			precedingBackslash = false;
+			skipWhitespace = true;
+			continued = true;
+			skipLineFeed = c == '\r';
+		}
+		if (length == 0) {
+			return -1;
+		}
+		if (precedingBackslash) {
+			length--;
+		}
+		return length;
+	}
+
+	/*
+	 * Skips to the end of a comment line. The line end itself is skipped as leading
+	 * whitespace of the next line.
+	 */
+	private void skipComment() throws IOException {
+		int c;
+		while ((c = read()) >= 0) {
+			if (c == '\n' || c == '\r') {
+				return;
+			}
+		}
+	}
+
+	private int read() throws IOException {
+		if (position == limit) {
+			var reader = this.reader;
+			if (reader == null) {
+				return -1;
+			}
+			int n;
+			do {
+				n = reader.read(buffer);
+			}
+			while (n == 0);
+			if (n < 0) {
+				return -1;
+			}
+			position = 0;
+			limit = n;
+		}
+		return buffer[position++];
+	}
+
+	private String convert(int start, int end) {
+		if (converted.length < end - start) {
+			converted = new char[line.length];
+		}
+		char[] out = converted;
+		int length = 0;
+		int i = start;
+		while (i < end) {
+			char c = line[i++];
+			if (c != '\\') {
+				out[length++] = c;
+				continue;
+			}
+			if (i == end) {
+				break;
+			}
+			c = line[i++];
+			switch (c) {
+				case 'u' -> {
+					if (end - i < 4) {
+						throw malformed();
+					}
+					int value = 0;
+					for (int j = 0; j < 4; j++) {
+						int digit = hexDigit(line[i++]);
+						if (digit < 0) {
+							throw malformed();
+						}
+						value = (value << 4) | digit;
+					}
+					out[length++] = (char) value;
+				}
+				case 't' -> out[length++] = '\t';
+				case 'r' -> out[length++] = '\r';
+				case 'n' -> out[length++] = '\n';
+				case 'f' -> out[length++] = '\f';
+				default -> out[length++] = c;
+			}
+		}
+		return new String(out, 0, length);
+	}
+
+	private static int hexDigit(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+	private static IllegalArgumentException malformed() {
+		return new IllegalArgumentException("Malformed \\uxxxx encoding.");
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\t' || c == '\f';
+	}
+
+	/*
+	 * Malformed input is replaced like InputStreamReader does. The lexer always reads
+	 * into its whole buffer so there is always room for a surrogate pair.
+	 */
+	private static final class ByteBufferReader extends Reader {
+
+		private final ByteBuffer input;
+
+		private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		private boolean flushed;
+
+		ByteBufferReader(ByteBuffer input) {
+			this.input = input;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			Objects.checkFromIndexSize(off, len, cbuf.length);
+			if (len == 0) {
+				return 0;
+			}
+			if (flushed) {
+				return -1;
+			}
+			var out = CharBuffer.wrap(cbuf, off, len);
+			/*
+			 * The whole input is available so it is always the end of the input.
+			 */
+			if (decoder.decode(input, out, true).isUnderflow() && decoder.flush(out).isUnderflow()) {
+				flushed = true;
+			}
+			int n = out.position() - off;
+			return n == 0 && flushed ? -1 : n;
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
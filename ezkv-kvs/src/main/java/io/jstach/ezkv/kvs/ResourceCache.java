@@ -0,0 +1,192 @@
+package io.jstach.ezkv.kvs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jspecify.annotations.Nullable;
+
+import io.jstach.ezkv.kvs.KeyValuesMedia.Parser;
+import io.jstach.ezkv.kvs.KeyValuesServiceProvider.KeyValuesLoaderFinder.LoaderContext;
+
+/*
+ * A bounded least recently used cache of parsed but not yet interpolated key values of
+ * resources. The cache is owned by a reusable loader so that calling load again does
+ * not reparse resources that have not changed.
+ *
+ * Entries are keyed by the normalized resource which includes the URI, flags,
+ * parameters and the key that referenced the resource. An entry is only reused if the
+ * fingerprint of the resource matches (file modification time and size or a digest of
+ * the content).
+ */
+final class ResourceCache {
+
+	static final int DEFAULT_MAX_SIZE = 128;
+
+	private static final ResourceCache NONE = new ResourceCache(0);
+
+	private final int maxSize;
+
+	/*
+	 * We use a lock instead of synchronized because resources can be fetched on virtual
+	 * threads.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Map<KeyValuesResource, Entry> entries;
+
+	private ResourceCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<KeyValuesResource, Entry> eldest) {
+				return size() > ResourceCache.this.maxSize;
+			}
+		};
+	}
+
+	static ResourceCache of(int maxSize) {
+		if (maxSize <= 0) {
+			return NONE;
+		}
+		return new ResourceCache(maxSize);
+	}
+
+	static ResourceCache of(LoaderContext context) {
+		return switch (context) {
+			case DefaultLoaderContext d -> d.cache();
+		};
+	}
+
+	sealed interface Fingerprint {
+
+		/*
+		 * The fileKey is usually the inode which changes if the file is replaced with an
+		 * atomic move.
+		 */
+		record FileFingerprint(Path path, FileTime lastModified, long size,
+				@Nullable Object fileKey) implements Fingerprint {
+		}
+
+		record ContentFingerprint(long size, String digest) implements Fingerprint {
+		}
+
+		/*
+		 * Resources flagged with NO_RELOAD are never fetched again.
+		 */
+		enum Unconditional implements Fingerprint {
+
+			NO_RELOAD
+
+		}
+
+	}
+
+	private record Entry(Fingerprint fingerprint, KeyValues keyValues) {
+	}
+
+	boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	@Nullable
+	KeyValues get(KeyValuesResource resource, Fingerprint fingerprint) {
+		var entry = entry(resource);
+		if (entry != null && entry.fingerprint.equals(fingerprint)) {
+			return entry.keyValues;
+		}
+		return null;
+	}
+
+	/*
+	 * Gets the entry regardless of fingerprint.
+	 */
+	@Nullable
+	KeyValues get(KeyValuesResource resource) {
+		var entry = entry(resource);
+		return entry == null ? null : entry.keyValues;
+	}
+
+	private @Nullable Entry entry(KeyValuesResource resource) {
+		if (!isEnabled()) {
+			return null;
+		}
+		lock.lock();
+		try {
+			return entries.get(resource);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	KeyValues put(KeyValuesResource resource, Fingerprint fingerprint, KeyValues keyValues) {
+		if (!isEnabled()) {
+			return keyValues;
+		}
+		var kvs = keyValues.memoize();
+		lock.lock();
+		try {
+			entries.put(resource, new Entry(fingerprint, kvs));
+		}
+		finally {
+			lock.unlock();
+		}
+		return kvs;
+	}
+
+	/*
+	 * Parses the file unless the file modification time and size have not changed since
+	 * it was last parsed. The attributes are read before the file is opened so that a
+	 * concurrent modification will at worst cause an extra parse later.
+	 */
+	KeyValues parseFile(KeyValuesResource resource, Parser parser, Path path) throws IOException {
+		var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		var fingerprint = new Fingerprint.FileFingerprint(path, attributes.lastModifiedTime(), attributes.size(),
+				attributes.fileKey());
+		var cached = get(resource, fingerprint);
+		if (cached != null) {
+			return cached;
+		}
+		return put(resource, fingerprint, FileBuffers.parse(resource, parser, path));
+	}
+
+	/*
+	 * Resources that are not files do not have a reliable modification time so we read
+	 * the bytes and only parse if the digest of the content has changed.
+	 */
+	KeyValues parseContent(KeyValuesResource resource, Parser parser, InputStream is) throws IOException {
+		byte[] content;
+		try (is) {
+			content = is.readAllBytes();
+		}
+		var fingerprint = new Fingerprint.ContentFingerprint(content.length, digest(content));
+		var cached = get(resource, fingerprint);
+		if (cached != null) {
+			return cached;
+		}
+		return put(resource, fingerprint, parser.parse(resource, ByteBuffer.wrap(content)));
+	}
+
+	private static String digest(byte[] content) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
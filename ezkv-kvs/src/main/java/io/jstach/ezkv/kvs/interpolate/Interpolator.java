@@ -1,13 +1,18 @@
 package io.jstach.ezkv.kvs.interpolate;
 
-import static java.util.Objects.requireNonNull;
-
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import org.jspecify.annotations.Nullable;
 
 import io.jstach.ezkv.kvs.KeyValuesException;
-import io.jstach.ezkv.kvs.interpolate.StrSubstitutor.StrLookup;
 
 /**
  * Provides functionality for interpolating values within a string using keys and raw
@@ -17,6 +22,17 @@ import io.jstach.ezkv.kvs.interpolate.StrSubstitutor.StrLookup;
  * a mapping function. It supports custom logic for determining how placeholders are
  * resolved and handles errors when required variables are missing.
  * </p>
+ * <p>
+ * Raw strings are {@linkplain #compile(String) compiled} into a {@link Template} which
+ * can be kept so that interpolating the same raw string again does not parse it again.
+ * The loaded key values keep the templates of their raw values. Applications can use
+ * templates to render their own strings against loaded key values:
+ * </p>
+ * {@snippet :
+ * var kvs = KeyValuesSystem.defaults().loader().add("classpath:/app.properties").load();
+ * var template = Interpolator.compile("Hello ${user.name:-stranger}!");
+ * String greeting = template.render(kvs.toMap()::get);
+ * }
  */
 public interface Interpolator {
 
@@ -27,11 +43,56 @@ public interface Interpolator {
 	 * @return a new {@code Interpolator} instance
 	 */
 	static Interpolator create(Function<String, @Nullable String> f) {
-		return new InternalInterpolator(f);
+		return new InternalInterpolator(k -> null, f, new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * Creates a new {@code Interpolator} where some variables are already resolved. The
+	 * values of resolved variables are used as is unlike the values of other variables
+	 * which are interpolated as well.
+	 * @param resolved a function that maps keys to already interpolated values, or
+	 * {@code null} if the variables function should be used.
+	 * @param f a function that maps keys to their corresponding values, or {@code null}
+	 * if the key does not have a mapping
+	 * @return a new {@code Interpolator} instance
+	 */
+	static Interpolator create(Function<String, @Nullable String> resolved, Function<String, @Nullable String> f) {
+		return new InternalInterpolator(resolved, f, new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * Creates a new {@code Interpolator} like {@link #create(Function, Function)} that
+	 * keeps the compiled templates of variable values in the given map so that
+	 * interpolators sharing the map compile the value of a variable only once.
+	 * @param resolved a function that maps keys to already interpolated values, or
+	 * {@code null} if the variables function should be used.
+	 * @param f a function that maps keys to their corresponding values, or {@code null}
+	 * if the key does not have a mapping
+	 * @param templates compiled templates by variable value which is read and added to.
+	 * It must be thread safe if the interpolators are used by multiple threads.
+	 * @return a new {@code Interpolator} instance
+	 */
+	static Interpolator create(Function<String, @Nullable String> resolved, Function<String, @Nullable String> f,
+			Map<String, Template> templates) {
+		return new InternalInterpolator(resolved, f, templates);
+	}
+
+	/**
+	 * Compiles a raw string into a template. Templates are not cached so callers that
+	 * render the same raw string repeatedly should keep the template.
+	 * @param raw the raw string containing placeholders.
+	 * @return compiled template.
+	 */
+	static Template compile(String raw) {
+		return CompiledTemplate.of(raw);
 	}
 
 	/**
-	 * Interpolates placeholders in the given raw string using the associated key.
+	 * Interpolates placeholders in the given raw string using the associated key. The raw
+	 * string is compiled on every call and not cached so callers that interpolate the
+	 * same raw string repeatedly should {@linkplain #compile(String) compile} it once and
+	 * use {@link #interpolate(String, Template)}. The compiled templates of variable
+	 * values are reused by this interpolator.
 	 * @param key the key for which interpolation is being performed
 	 * @param raw the raw string containing placeholders to interpolate
 	 * @return the interpolated string
@@ -40,6 +101,60 @@ public interface Interpolator {
 	 */
 	String interpolate(String key, String raw) throws InterpolationException;
 
+	/**
+	 * Interpolates a compiled template using the associated key.
+	 * @param key the key for which interpolation is being performed
+	 * @param template the compiled template
+	 * @return the interpolated string
+	 * @throws InterpolationException if interpolation fails, such as when a required
+	 * placeholder cannot be resolved
+	 */
+	default String interpolate(String key, Template template) throws InterpolationException {
+		return interpolate(key, template.raw());
+	}
+
+	/**
+	 * A raw string compiled into literal text and variable references.
+	 * <p>
+	 * A variable is referenced with <code>${name}</code> and may have a default value
+	 * with <code>${name:-default}</code>. Both the name and the default value may contain
+	 * variables. The default value is only interpolated if the variable is missing. The
+	 * values of variables are interpolated as well. A variable reference can be escaped
+	 * with <code>$${name}</code> which results in the literal text <code>${name}</code>.
+	 * </p>
+	 *
+	 * @see Interpolator#compile(String)
+	 */
+	sealed interface Template {
+
+		/**
+		 * The raw string this template was compiled from.
+		 * @return raw string.
+		 */
+		String raw();
+
+		/**
+		 * The names of variables referenced by this template including the ones in
+		 * default values. Variables whose names are interpolated are not included but
+		 * variables used in their names are.
+		 * @return variable names in the order they appear.
+		 */
+		Set<String> variables();
+
+		/**
+		 * Renders the template with the raw string used as the key in exceptions.
+		 * @param variables a function that maps variable names to values, or {@code null}
+		 * if the variable does not have a value.
+		 * @return the rendered string
+		 * @throws InterpolationException if a variable without a default is missing or
+		 * variables reference each other in a loop.
+		 */
+		default String render(Function<String, @Nullable String> variables) throws InterpolationException {
+			return Interpolator.create(variables).interpolate(raw(), this);
+		}
+
+	}
+
 	/**
 	 * Exception thrown when an interpolation operation fails.
 	 */
@@ -47,8 +162,14 @@ public interface Interpolator {
 
 		private static final long serialVersionUID = 4135719008465817465L;
 
+		/**
+		 * The key involved in the interpolation failure.
+		 */
 		private final String key;
 
+		/**
+		 * The raw string being interpolated.
+		 */
 		private final String raw;
 
 		/**
@@ -88,6 +209,9 @@ public interface Interpolator {
 
 		private static final long serialVersionUID = 4135719008465817465L;
 
+		/**
+		 * The missing variable name.
+		 */
 		private final String variable;
 
 		/**
@@ -114,13 +238,23 @@ public interface Interpolator {
 
 }
 
-class InternalInterpolator implements Interpolator {
+final class InternalInterpolator implements Interpolator {
+
+	private final Function<String, @Nullable String> resolved;
 
-	// private final StrSubstitutor strSubstitutor;
 	private final Function<String, @Nullable String> lookup;
 
-	InternalInterpolator(Function<String, @Nullable String> lookup) {
+	/*
+	 * Compiled templates of variable values that have variables as the same variables are
+	 * usually looked up many times.
+	 */
+	private final Map<String, Template> templates;
+
+	InternalInterpolator(Function<String, @Nullable String> resolved, Function<String, @Nullable String> lookup,
+			Map<String, Template> templates) {
+		this.resolved = resolved;
 		this.lookup = lookup;
+		this.templates = templates;
 	}
 
 	@Override
@@ -129,35 +263,301 @@ class InternalInterpolator implements Interpolator {
 		if (original.indexOf('$') < 0) {
 			return original;
 		}
+		return interpolate(key, CompiledTemplate.of(original));
+	}
+
+	@Override
+	public String interpolate(String key, Template template) {
+		CompiledTemplate t = switch (template) {
+			case CompiledTemplate ct -> ct;
+		};
+		var literal = t.literal();
+		if (literal != null) {
+			return literal;
+		}
+		var sb = new StringBuilder(t.raw().length() + 16);
+		new Rendering(key, t.raw()).render(t, sb);
+		return sb.toString();
+	}
+
+	/*
+	 * The state of rendering a single top level template.
+	 */
+	private final class Rendering {
+
+		private final String key;
+
+		private final String original;
+
+		/*
+		 * Variables currently being resolved to detect loops.
+		 */
+		private final List<String> resolving = new ArrayList<>();
+
+		private final Set<String> resolvingNames = new HashSet<>();
+
+		Rendering(String key, String original) {
+			this.key = key;
+			this.original = original;
+		}
+
+		void render(CompiledTemplate template, StringBuilder sb) {
+			var literal = template.literal();
+			if (literal != null) {
+				sb.append(literal);
+				return;
+			}
+			for (var segment : template.segments()) {
+				switch (segment) {
+					case Segment.Text t -> sb.append(t.text());
+					case Segment.Variable v -> resolve(v, sb);
+				}
+			}
+		}
+
+		String render(CompiledTemplate template) {
+			var literal = template.literal();
+			if (literal != null) {
+				return literal;
+			}
+			var sb = new StringBuilder();
+			render(template, sb);
+			return sb.toString();
+		}
+
+		private void resolve(Segment.Variable variable, StringBuilder sb) {
+			String name = render(variable.name());
+			String value = resolved.apply(name);
+			if (value != null) {
+				sb.append(value);
+				return;
+			}
+			var defaultValue = variable.defaultValue();
+			value = lookup(name, defaultValue != null);
+			if (value == null && defaultValue != null) {
+				value = render(defaultValue);
+			}
+			if (value == null) {
+				/*
+				 * Missing variables are left as is.
+				 */
+				sb.append(variable.text());
+				return;
+			}
+			if (value.indexOf('$') < 0) {
+				sb.append(value);
+				return;
+			}
+			if (!resolvingNames.add(name)) {
+				resolving.add(name);
+				throw new InterpolationException("Infinite recursion for key. key: '" + key + "', reason: '"
+						+ "Infinite loop in property interpolation of " + original + ": "
+						+ String.join("->", resolving.subList(resolving.indexOf(name), resolving.size())) + "'"
+						+ ", raw: '" + original + "'", key, original);
+			}
+			/*
+			 * The value of a variable is interpolated as well.
+			 */
+			resolving.add(name);
+			render(template(value), sb);
+			resolving.remove(resolving.size() - 1);
+			resolvingNames.remove(name);
+		}
 
-		StrSubstitutor st = new StrSubstitutor(new StrLookup() {
-			@Override
-			public @Nullable String lookup(@Nullable String variable, boolean defaultValue) {
-				if (variable == null) {
-					throw new NullPointerException("variable was null");
+		private CompiledTemplate template(String value) {
+			var template = templates.get(value);
+			if (template == null) {
+				template = CompiledTemplate.of(value);
+				var existing = templates.putIfAbsent(value, template);
+				if (existing != null) {
+					template = existing;
 				}
-				String v = lookup.apply(variable);
-				if (v == null) {
-					if (key.equals(variable) || defaultValue) {
-						return null;
-					}
-					throw new MissingVariableInterpolationException("Variable is missing for key. key: '" + key + "'"
-							+ ", variable: '" + variable + "'" + ", raw: '" + original + "'", key, original, variable);
+			}
+			return switch (template) {
+				case CompiledTemplate ct -> ct;
+			};
+		}
+
+		private @Nullable String lookup(String variable, boolean defaultValue) {
+			String v = lookup.apply(variable);
+			if (v == null) {
+				if (key.equals(variable) || defaultValue) {
+					return null;
 				}
-				return v;
+				throw new MissingVariableInterpolationException("Variable is missing for key. key: '" + key + "'"
+						+ ", variable: '" + variable + "'" + ", raw: '" + original + "'", key, original, variable);
 			}
-		});
-		// st.setEnableSubstitutionInVariables(true);
+			return v;
+		}
+
+	}
+
+}
+
+/*
+ * The syntax is the same as Apache Commons Text StrSubstitutor which was used before
+ * templates were compiled.
+ */
+sealed interface Segment {
+
+	record Text(String text) implements Segment {
+	}
+
+	/*
+	 * Text is the original text of the variable reference which is used if the variable
+	 * is missing.
+	 */
+	record Variable(String text, CompiledTemplate name, @Nullable CompiledTemplate defaultValue) implements Segment {
+	}
+
+}
+
+/*
+ * Literal is not null if the template has no variables. A raw string without a $ is
+ * literal and has no segments.
+ */
+record CompiledTemplate(String raw, List<Segment> segments, @Nullable String literal,
+		Set<String> variables) implements Interpolator.Template {
+
+	private static final String PREFIX = "${";
+
+	private static final char SUFFIX = '}';
+
+	private static final char ESCAPE = '$';
+
+	private static final String VALUE_DELIMITER = ":-";
 
-		try {
-			String result = st.replace(original);
-			return requireNonNull(result);
+	static CompiledTemplate of(String raw) {
+		if (raw.indexOf(ESCAPE) < 0) {
+			return new CompiledTemplate(raw, List.of(), raw, Set.of());
 		}
-		catch (IllegalStateException e) {
-			throw new InterpolationException("Infinite recursion for key. key: '" + key + "', reason: '"
-					+ e.getMessage() + "'" + ", raw: '" + original + "'", key, original);
+		return parse(raw, 0, raw.length());
+	}
+
+	@Override
+	public String toString() {
+		return "Template[" + raw + "]";
+	}
+
+	private static CompiledTemplate parse(String raw, int start, int end) {
+		List<Segment> segments = new ArrayList<>();
+		var text = new StringBuilder();
+		int pos = start;
+		while (pos < end) {
+			if (!raw.startsWith(PREFIX, pos) || pos + PREFIX.length() > end) {
+				text.append(raw.charAt(pos++));
+				continue;
+			}
+			if (pos > start && raw.charAt(pos - 1) == ESCAPE) {
+				/*
+				 * Escaped so we drop the escape character that was already added.
+				 */
+				text.setLength(text.length() - 1);
+				text.append(raw.charAt(pos++));
+				continue;
+			}
+			int suffix = findSuffix(raw, pos + PREFIX.length(), end);
+			if (suffix < 0) {
+				/*
+				 * No end so the rest is literal text.
+				 */
+				text.append(raw, pos, end);
+				break;
+			}
+			if (!text.isEmpty()) {
+				segments.add(new Segment.Text(text.toString()));
+				text.setLength(0);
+			}
+			segments.add(variable(raw, pos, suffix));
+			pos = suffix + 1;
 		}
+		if (!text.isEmpty()) {
+			segments.add(new Segment.Text(text.toString()));
+		}
+		String literal = null;
+		if (segments.isEmpty()) {
+			literal = "";
+		}
+		else if (segments.size() == 1 && segments.get(0) instanceof Segment.Text t) {
+			literal = t.text();
+		}
+		return new CompiledTemplate(raw.substring(start, end), List.copyOf(segments), literal, variables(segments));
+	}
 
+	private static Set<String> variables(List<Segment> segments) {
+		Set<String> variables = new LinkedHashSet<>();
+		for (var segment : segments) {
+			if (segment instanceof Segment.Variable v) {
+				var name = v.name().literal();
+				if (name != null) {
+					variables.add(name);
+				}
+				else {
+					variables.addAll(v.name().variables());
+				}
+				var defaultValue = v.defaultValue();
+				if (defaultValue != null) {
+					variables.addAll(defaultValue.variables());
+				}
+			}
+		}
+		return variables.isEmpty() ? Set.of() : Collections.unmodifiableSet(variables);
+	}
+
+	private static Segment.Variable variable(String raw, int prefix, int suffix) {
+		int nameStart = prefix + PREFIX.length();
+		int delimiter = findDelimiter(raw, nameStart, suffix);
+		String text = raw.substring(prefix, suffix + 1);
+		if (delimiter < 0) {
+			return new Segment.Variable(text, parse(raw, nameStart, suffix), null);
+		}
+		return new Segment.Variable(text, parse(raw, nameStart, delimiter),
+				parse(raw, delimiter + VALUE_DELIMITER.length(), suffix));
+	}
+
+	/*
+	 * Nested variables are counted so that their suffixes are skipped.
+	 */
+	private static int findSuffix(String raw, int pos, int end) {
+		int nested = 0;
+		while (pos < end) {
+			if (raw.startsWith(PREFIX, pos) && pos + PREFIX.length() <= end) {
+				nested++;
+				pos += PREFIX.length();
+				continue;
+			}
+			if (raw.charAt(pos) == SUFFIX) {
+				if (nested == 0) {
+					return pos;
+				}
+				nested--;
+			}
+			pos++;
+		}
+		return -1;
+	}
+
+	/*
+	 * Finds the first default value delimiter that is not in a nested variable.
+	 */
+	private static int findDelimiter(String raw, int pos, int end) {
+		int nested = 0;
+		while (pos < end) {
+			if (raw.startsWith(PREFIX, pos)) {
+				nested++;
+				pos += PREFIX.length();
+				continue;
+			}
+			char c = raw.charAt(pos);
+			if (c == SUFFIX && nested > 0) {
+				nested--;
+			}
+			else if (nested == 0 && raw.startsWith(VALUE_DELIMITER, pos) && pos + VALUE_DELIMITER.length() <= end) {
+				return pos;
+			}
+			pos++;
+		}
+		return -1;
 	}
 
 }
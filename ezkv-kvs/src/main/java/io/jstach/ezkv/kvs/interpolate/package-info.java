@@ -1,2 +1,11 @@
+/**
+ * Variable interpolation of {@code ${name:-default}} expressions used by
+ * {@link io.jstach.ezkv.kvs.KeyValues} while loading.
+ *
+ * <p>
+ * The {@link io.jstach.ezkv.kvs.interpolate.Interpolator} and its compiled
+ * {@link io.jstach.ezkv.kvs.interpolate.Interpolator.Template} are exported so that
+ * applications can render their own strings with the same rules as loaded key values.
+ */
 @org.jspecify.annotations.NullMarked
-package io.jstach.ezkv.kvs.interpolate;
\ No newline at end of file
+package io.jstach.ezkv.kvs.interpolate;
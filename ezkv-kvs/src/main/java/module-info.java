@@ -99,6 +99,7 @@
  */
 module io.jstach.ezkv.kvs {
 	exports io.jstach.ezkv.kvs;
+	exports io.jstach.ezkv.kvs.interpolate;
 	
 	requires org.jspecify;
 	
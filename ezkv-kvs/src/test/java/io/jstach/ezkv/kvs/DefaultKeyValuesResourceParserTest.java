@@ -0,0 +1,57 @@
+package io.jstach.ezkv.kvs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class DefaultKeyValuesResourceParserTest {
+
+	final DefaultKeyValuesResourceParser parser = DefaultKeyValuesResourceParser.of();
+
+	@Test
+	void testPartition() throws Exception {
+		var kvs = KeyValues.builder()
+			.add("a", "1")
+			.add("_load_first", "classpath:/first.properties")
+			.add("_p_first_x", "X")
+			.add("b", "2")
+			.add("_load_second", "classpath:/second.properties?_flag=optional")
+			.add("_flags_first", "no_require")
+			.add("_p_second_y", "Y")
+			.add("_p_none_z", "Z")
+			.build();
+		var partition = parser.partition(kvs);
+		assertEquals(List.of("a", "b"), partition.keyValues().stream().map(KeyValue::key).toList());
+		var resources = partition.resources(Set.of());
+		assertEquals(List.of("first", "second"), resources.stream().map(KeyValuesResource::name).toList());
+
+		var first = resources.get(0);
+		assertEquals("classpath:/first.properties", first.uri().toString());
+		assertEquals("X", first.parameters().getValue("x"));
+		assertEquals(Set.of(LoadFlag.NO_REQUIRE), first.loadFlags());
+
+		var second = resources.get(1);
+		assertEquals("classpath:/second.properties", second.uri().toString());
+		assertEquals("Y", second.parameters().getValue("y"));
+		assertEquals(Set.of(LoadFlag.NO_REQUIRE), second.loadFlags());
+
+		assertEquals(resources, parser.parseResources(kvs, Set.of()));
+		assertEquals(partition.keyValues(), parser.filterResources(kvs));
+	}
+
+	@Test
+	void testPartitionBadResourceKey() throws Exception {
+		var noLoad = KeyValues.builder().add("a", "1").add("_p_", "bad").build();
+		var partition = parser.partition(noLoad);
+		assertEquals(List.of(), partition.resources(Set.of()));
+		assertEquals(List.of("a", "_p_"), partition.keyValues().stream().map(KeyValue::key).toList());
+
+		var load = KeyValues.builder().add("_load_a", "classpath:/a.properties").add("_p_", "bad").build();
+		assertThrows(KeyValuesResourceParserException.class, () -> parser.partition(load).resources(Set.of()));
+	}
+
+}
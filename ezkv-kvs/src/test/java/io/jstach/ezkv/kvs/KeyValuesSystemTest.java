@@ -1,6 +1,7 @@
 package io.jstach.ezkv.kvs;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.ByteArrayInputStream;
@@ -9,17 +10,27 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 import org.jspecify.annotations.NonNull;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import io.jstach.ezkv.kvs.KeyValuesEnvironment.Logger;
 import io.jstach.ezkv.kvs.KeyValuesServiceProvider.KeyValuesProvider;
@@ -238,6 +249,192 @@ class KeyValuesSystemTest {
 		}
 	}
 
+	@Test
+	void testLoaderConcurrent() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("user.home", "/home/kenny");
+		var sequentialLogger = new TestLogger();
+		var concurrentLogger = new TestLogger();
+		var sequential = loadConcurrent(properties, sequentialLogger, false);
+		var concurrent = loadConcurrent(properties, concurrentLogger, true);
+		assertEquals(sequential.stream().map(KeyValue::toString).toList(),
+				concurrent.stream().map(KeyValue::toString).toList());
+		assertEquals(sequentialLogger.toString(), concurrentLogger.toString());
+	}
+
+	private static KeyValues loadConcurrent(Properties properties, TestLogger logger, boolean concurrent)
+			throws IOException {
+		var environment = new KeyValuesEnvironment() {
+			@Override
+			public Properties getSystemProperties() {
+				return properties;
+			}
+
+			@Override
+			public Logger getLogger() {
+				return logger;
+			}
+		};
+		return KeyValuesSystem.builder()
+			.environment(environment)
+			.build() //
+			.loader() //
+			.concurrent(concurrent)
+			.add("system:///", b -> b.name("system").noAdd(true).noInterpolation(true))
+			.add("classpath:/test-props/testLoader.properties")
+			.add("classpaths:/classpathstar.properties")
+			.add("classpath:/test-props/testLoader-profile2.properties")
+			.add("classpath:/test-props/testLoader-doesnotexist.properties", b -> b.name("missing").optional(true))
+			.load();
+	}
+
+	@Test
+	void testLoaderInterpolation(@TempDir Path tempDir) throws Exception {
+		Path child = tempDir.resolve("child.properties");
+		Files.writeString(child, "child=${base}");
+		var first = KeyValues.builder()
+			.add("plain", "value")
+			.add("base", "/a")
+			.add("path", "${base}/x")
+			.add("_load_child", "file://${dir}/child.properties")
+			.build();
+		var second = KeyValues.builder().add("base", "/b").add("path", "${path}:/y").build();
+		var kvs = KeyValuesSystem.defaults()
+			.loader()
+			.add(Variables.builder().add("dir", tempDir.toString()).build())
+			.add("first", first)
+			.add("second", second)
+			.load();
+		String actual = kvs.stream().map(KeyValue::toString).collect(Collectors.joining("\n"));
+		String expected = """
+				KeyValue[key='plain', raw='value', expanded='value', source=Source[uri=null:///first, index=0]]
+				KeyValue[key='base', raw='/a', expanded='/a', source=Source[uri=null:///first, index=0]]
+				KeyValue[key='path', raw='${base}/x', expanded='/b/x', source=Source[uri=null:///first, index=0]]
+				KeyValue[key='child', raw='${base}', expanded='/b', source=Source[uri=file://%s/child.properties, reference=[key='_load_child', in='null:///first'], index=1]]
+				KeyValue[key='base', raw='/b', expanded='/b', source=Source[uri=null:///second, index=0]]
+				KeyValue[key='path', raw='${path}:/y', expanded='/b/x:/y', source=Source[uri=null:///second, index=0]]"""
+			.formatted(tempDir);
+		out.println(actual);
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	void testLoaderCache(@TempDir Path tempDir) throws Exception {
+		Path file = tempDir.resolve("cache.properties");
+		Path noReloadFile = tempDir.resolve("noreload.properties");
+		Files.writeString(file, "a=1");
+		Files.writeString(noReloadFile, "b=1");
+		var lastModified = Files.getLastModifiedTime(file);
+		var loader = KeyValuesSystem.defaults()
+			.loader()
+			.add(file.toUri().toString())
+			.add(noReloadFile.toUri().toString(), b -> b.name("noreload").addFlags(KeyValuesResource.FLAG_NO_RELOAD))
+			.build();
+		assertEquals(Map.of("a", "1", "b", "1"), loader.load().toMap());
+		/*
+		 * Same size and modification time so the previously parsed key values are used.
+		 */
+		Files.writeString(file, "a=2");
+		Files.setLastModifiedTime(file, lastModified);
+		Files.writeString(noReloadFile, "b=2");
+		assertEquals(Map.of("a", "1", "b", "1"), loader.load().toMap());
+		Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() + 10_000));
+		assertEquals(Map.of("a", "2", "b", "1"), loader.load().toMap());
+		var uncached = KeyValuesSystem.defaults()
+			.loader()
+			.cacheSize(0)
+			.add(noReloadFile.toUri().toString(), b -> b.name("noreload").addFlags(KeyValuesResource.FLAG_NO_RELOAD))
+			.build();
+		assertEquals(Map.of("b", "2"), uncached.load().toMap());
+		Files.writeString(noReloadFile, "b=3");
+		assertEquals(Map.of("b", "3"), uncached.load().toMap());
+	}
+
+	@Test
+	void testLoadFileBuffers(@TempDir Path tempDir) throws Exception {
+		Path small = tempDir.resolve("small.properties");
+		Path large = tempDir.resolve("large.properties");
+		Files.writeString(small, "small=caf\\u00e9 é\n");
+		var sb = new StringBuilder();
+		int count = 0;
+		while (sb.length() <= FileBuffers.POOLED_SIZE) {
+			sb.append("key").append(count).append("=é").append(count++).append('\n');
+		}
+		Files.writeString(large, sb);
+		for (int cacheSize : new int[] { 0, ResourceCache.DEFAULT_MAX_SIZE }) {
+			var kvs = KeyValuesSystem.defaults()
+				.loader()
+				.cacheSize(cacheSize)
+				.add(small.toUri().toString())
+				.add(large.toUri().toString())
+				.build()
+				.load();
+			assertEquals("café é", kvs.get("small").expanded());
+			assertEquals("é0", kvs.get("key0").expanded());
+			assertEquals("é" + (count - 1), kvs.get("key" + (count - 1)).expanded());
+			assertEquals(count + 1, kvs.stream().count());
+		}
+		/*
+		 * Properties are decoded in chunks so multibyte chars cross the chunks.
+		 */
+		byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+		var direct = ByteBuffer.allocateDirect(bytes.length + 2).put(bytes).put((byte) 'x').put((byte) 0xFF).flip();
+		var properties = KeyValuesMedia.ofProperties().parser();
+		var fromBuffer = properties.parse(KeyValuesResource.builder(large.toUri()).build(), direct);
+		assertEquals(count + 1, fromBuffer.stream().count());
+		assertEquals(properties.parse(sb.toString() + "x\uFFFD").toMap(), fromBuffer.toMap());
+		assertEquals(0, direct.position());
+		/*
+		 * Media that only implement the stream entry point read the buffer as a stream.
+		 */
+		KeyValuesMedia.Parser parser = (input, consumer) -> consumer.accept("content",
+				KeyValuesMedia.inputStreamToString(input));
+		var buffer = ByteBuffer.wrap("ignored,é".getBytes(StandardCharsets.UTF_8)).position(8);
+		assertEquals(Map.of("content", "é"),
+				parser.parse(KeyValuesResource.builder(small.toUri()).build(), buffer).toMap());
+		assertEquals(8, buffer.position());
+		/*
+		 * Media that override the resource stream entry point are still used for files.
+		 */
+		KeyValuesMedia.Parser resourceParser = new KeyValuesMedia.Parser() {
+			@Override
+			public void parse(InputStream input, BiConsumer<String, String> consumer) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public KeyValues parse(KeyValuesResource source, InputStream is) throws IOException {
+				return KeyValues.builder(source).add("resource", KeyValuesMedia.inputStreamToString(is)).build();
+			}
+		};
+		assertEquals(Map.of("resource", "é"),
+				resourceParser.parse(KeyValuesResource.builder(small.toUri()).build(), buffer).toMap());
+	}
+
+	@Test
+	void testWatcher(@TempDir Path tempDir) throws Exception {
+		Path file = tempDir.resolve("watch.properties");
+		Path child = tempDir.resolve("child.properties");
+		Files.writeString(file, "a=1\n_load_child=" + child.toUri() + "\n_flags_child=optional");
+		var loader = KeyValuesSystem.defaults().loader().add(file.toUri().toString()).build();
+		BlockingQueue<KeyValues> reloads = new LinkedBlockingQueue<>();
+		try (var watcher = KeyValuesWatcher.builder(loader)
+			.debounce(Duration.ofMillis(50))
+			.listener(reloads::add)
+			.build()) {
+			assertEquals(Map.of("a", "1"), watcher.current().toMap());
+			assertEquals(Set.of(file.toAbsolutePath(), child.toAbsolutePath()), watcher.files());
+			/*
+			 * The optional child does not exist yet but is still watched.
+			 */
+			Files.writeString(child, "b=2");
+			var kvs = reloads.poll(30, TimeUnit.SECONDS);
+			assertNotNull(kvs);
+			assertEquals(Map.of("a", "1", "b", "2"), kvs.toMap());
+			assertEquals(kvs, watcher.current());
+		}
+	}
+
 	@Test
 	void testFailure() throws Exception {
 
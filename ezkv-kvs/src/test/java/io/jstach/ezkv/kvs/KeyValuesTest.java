@@ -1,13 +1,35 @@
 package io.jstach.ezkv.kvs;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 
+import io.jstach.ezkv.kvs.interpolate.Interpolator.InterpolationException;
+
 class KeyValuesTest {
 
 	static PrintStream out = Objects.requireNonNull(System.out);
@@ -57,7 +79,375 @@ class KeyValuesTest {
 					""";
 			assertEquals(expected, actual);
 		}
+		/*
+		 * Nothing changes when expanding again so nothing is copied.
+		 */
+		var again = expanded.expand(variables).stream().toList();
+		var previous = expanded.stream().toList();
+		for (int i = 0; i < previous.size(); i++) {
+			assertSame(previous.get(i), again.get(i));
+		}
+
+	}
+
+	@Test
+	void testGet() {
+		var kvs = KeyValues.builder().add("a", "1").add("b", "2").add("a", "3").build();
+		for (var k : List.of(kvs, kvs.filter(kv -> true), kvs.memoize())) {
+			assertEquals("3", Objects.requireNonNull(k.get("a")).value());
+			assertEquals("2", Objects.requireNonNull(k.get("b")).value());
+			assertNull(k.get("c"));
+			assertTrue(k.contains("a"));
+			assertFalse(k.contains("c"));
+			assertEquals(List.of("a", "b"), List.copyOf(k.toMap().keySet()));
+			assertEquals(List.of("3", "2"), List.copyOf(k.toMap().values()));
+		}
+		var memoized = kvs.memoize();
+		assertSame(memoized.toMap(), memoized.toMap());
+		assertThrows(UnsupportedOperationException.class, () -> memoized.toMap().put("a", "4"));
+		assertThrows(UnsupportedOperationException.class, () -> memoized.interpolate(Variables.empty()).put("a", "4"));
+		assertSame(memoized.get("a"), memoized.expand(Variables.empty()).get("a"));
+	}
+
+	@Test
+	void testSubtree() {
+		var kvs = KeyValues.builder()
+			.add("db.pool.max", "10")
+			.add("app.name", "app")
+			.add("db.url", "jdbc:h2:mem")
+			.add("db", "root")
+			.add("db.pool.min", "1")
+			.add("db-backup.url", "none")
+			.build();
+		for (var k : List.of(kvs, kvs.filter(kv -> true))) {
+			assertEquals(List.of("db.pool.max", "db.url", "db.pool.min"), keys(k.subtree("db.")));
+			assertEquals(List.of("pool.max", "url", "pool.min"), keys(k.stripPrefix("db.")));
+			assertEquals(List.of("max", "min"), keys(k.stripPrefix("db.pool.")));
+			assertEquals(List.of(), keys(k.subtree("x")));
+			assertEquals(List.of("pool", "url"), List.copyOf(k.childrenOf("db.")));
+			assertEquals(List.of("app", "db", "db-backup"), List.copyOf(k.childrenOf("")));
+		}
+		assertSame(kvs, kvs.subtree(""));
+	}
+
+	private static List<String> keys(KeyValues kvs) {
+		return kvs.stream().map(KeyValue::key).toList();
+	}
+
+	@Test
+	void testCompact() {
+		var kvs = KeyValues.builder(KeyValuesResource.builder(URI.create("file:///app.properties")).build())
+			.flag(KeyValue.Flag.NO_INTERPOLATION)
+			.add("a", "1")
+			.add("b", "${a}")
+			.add("a", "2")
+			.build()
+			.map(kv -> kv.key().equals("b") ? kv.withKey("c") : kv);
+		var compact = kvs.compact();
+		assertSame(compact, compact.compact());
+		assertEquals(kvs.stream().toList(), compact.stream().toList());
+		assertEquals(kvs.toString(), compact.toString());
+		assertEquals(kvs.toMap(), compact.toMap());
+		assertEquals(kvs.get("a"), compact.get("a"));
+		assertEquals(kvs.last(), compact.last());
+		var list = compact.stream().toList();
+		assertSame(list.get(0).meta().flags(), list.get(1).meta().flags());
+		assertSame(list.get(0), list.get(0).addFlags(Set.of(KeyValue.Flag.NO_INTERPOLATION)));
+	}
+
+	@Test
+	void testPipeline() {
+		var kvs = KeyValues.builder().add("a", "1").add("b", "2").add("c", "3").build();
+		List<String> calls = new ArrayList<>();
+		var filtered = kvs.filter(kv -> {
+			calls.add("filter " + kv.key());
+			return !kv.key().equals("b");
+		});
+		var mapped = filtered.map(kv -> {
+			calls.add("map " + kv.key());
+			return kv.withKey(kv.key().toUpperCase());
+		});
+		var flattened = mapped.flatMap(kv -> {
+			calls.add("flatMap " + kv.key());
+			return KeyValues.copyOf(List.of(kv, kv.withKey(kv.key() + "2")));
+		});
+		assertEquals(List.of(), calls);
+		assertEquals(List.of("A", "A2", "C", "C2"), keys(flattened));
+		assertEquals(List.of("A", "A2", "C", "C2"), keys(flattened));
+		assertEquals(List.of("A", "C"), keys(mapped));
+		assertEquals(List.of("a", "c"), keys(filtered));
+		assertEquals("3", Objects.requireNonNull(flattened.get("C")).expanded());
+		assertEquals(List.of("filter a", "map a", "flatMap A", "filter b", "filter c", "map c", "flatMap C"), calls);
+
+		calls.clear();
+		var again = flattened.filter(kv -> {
+			calls.add("filter " + kv.key());
+			return kv.key().endsWith("2");
+		});
+		assertEquals(List.of("A2", "C2"), keys(again));
+		assertEquals(List.of("A2", "C2"), keys(again.memoize()));
+		assertEquals(List.of("filter A", "filter A2", "filter C", "filter C2"), calls);
+	}
+
+	@Test
+	void testOverlay() {
+		var base = KeyValues.builder().add("a", "1").add("b", "2").add("a", "3").build().memoize();
+		var tenant = base.overlay(KeyValues.builder().add("b", "tenant").add("c", "4").build());
+		assertEquals(List.of("a", "b", "a", "b", "c"), keys(tenant));
+		assertEquals(Map.of("a", "3", "b", "tenant", "c", "4"), tenant.toMap());
+		assertEquals(List.of("a", "b", "c"), List.copyOf(tenant.toMap().keySet()));
+		assertEquals("tenant", Objects.requireNonNull(tenant.get("b")).value());
+		assertEquals("3", Objects.requireNonNull(tenant.get("a")).value());
+		assertNull(tenant.get("d"));
+		assertTrue(tenant.contains("c"));
+		assertEquals("c", tenant.last().orElseThrow().key());
+		assertSame(tenant, tenant.memoize());
+		assertSame(base, ((LayeredKeyValues) tenant).layers().get(0));
+		assertSame(base, base.overlay(KeyValues.empty()));
+
+		var defaults = KeyValues.builder().add("b", "default").add("d", "5").build();
+		var withDefaults = tenant.underlay(defaults);
+		assertEquals(Map.of("a", "3", "b", "tenant", "c", "4", "d", "5"), withDefaults.toMap());
+		assertEquals("tenant", Objects.requireNonNull(withDefaults.get("b")).value());
+		assertEquals("5", Objects.requireNonNull(withDefaults.get("d")).value());
+
+		var layered = base;
+		for (int i = 0; i < LayeredKeyValues.MAX_LAYERS * 2; i++) {
+			layered = layered.overlay(KeyValues.builder().add("i", "" + i).build());
+		}
+		var layers = ((LayeredKeyValues) layered).layers();
+		assertEquals(LayeredKeyValues.MAX_LAYERS, layers.size());
+		assertSame(base, layers.get(0));
+		assertEquals("" + (LayeredKeyValues.MAX_LAYERS * 2 - 1), Objects.requireNonNull(layered.get("i")).value());
+		assertEquals(3 + LayeredKeyValues.MAX_LAYERS * 2, layered.stream().count());
+	}
+
+	@Test
+	void testDiffAndFingerprint() {
+		var kvs = KeyValues.builder()
+			.add("host", "localhost")
+			.add("url", "http://${host}:${port}")
+			.add("name", "app")
+			.add("old", "1")
+			.build()
+			.expand(Variables.builder().add("port", "80").build());
+		var copy = KeyValues.copyOf(kvs.stream().toList());
+		assertEquals(copy.fingerprint(), kvs.fingerprint());
+		assertEquals(kvs.fingerprint(), kvs.compact().fingerprint());
+		assertEquals(kvs.fingerprint(), kvs.filter(kv -> true).fingerprint());
+		assertTrue(kvs.diff(copy).isEmpty());
+
+		var next = kvs.reexpand(Map.of("port", "8080"));
+		assertEquals(KeyValues.copyOf(next.stream().toList()).fingerprint(), next.fingerprint());
+		assertNotEquals(kvs.fingerprint(), next.fingerprint());
+		assertEquals(kvs.fingerprint(), next.reexpand(Map.of("port", "80")).fingerprint());
+		var diff = kvs.diff(next);
+		assertEquals(Set.of("url"), diff.changed());
+		assertTrue(diff.contains("url"));
+		assertFalse(diff.contains("host"));
+
+		var changed = next.filter(kv -> !kv.key().equals("old"))
+			.overlay(KeyValues.builder().add("new", "2").add("name", "app").build());
+		diff = next.diff(changed);
+		assertEquals(new KeyValues.Diff(Set.of("new"), Set.of("old"), Set.of()), diff);
+		assertNotEquals(KeyValues.builder().add("a", "bc").build().fingerprint(),
+				KeyValues.builder().add("ab", "c").build().fingerprint());
+		assertNotEquals(KeyValues.builder().add("a", "1").add("b", "2").build().fingerprint(),
+				KeyValues.builder().add("b", "2").add("a", "1").build().fingerprint());
+	}
 
+	@Test
+	void testTypedAccessors() throws Exception {
+		var kvs = KeyValues.builder(KeyValuesResource.builder(URI.create("file:///app.properties")).build())
+			.add("port", "80")
+			.add("port", " 8080 ")
+			.add("big", "3000000000")
+			.add("enabled", "TRUE")
+			.add("timeout", "30s")
+			.add("iso", "PT1M")
+			.add("millis", "250")
+			.add("size", "10MB")
+			.add("hosts", "a, b,,c ")
+			.build();
+		for (var k : List.of(kvs, kvs.filter(kv -> true), kvs.memoize(), kvs.compact(),
+				kvs.overlay(KeyValues.builder().add("other", "1").build()))) {
+			assertEquals(8080, k.getInt("port", 0));
+			assertEquals(1, k.getInt("missing", 1));
+			assertEquals(3000000000L, k.getLong("big", 0));
+			assertTrue(k.getBoolean("enabled", false));
+			assertEquals(Duration.ofSeconds(30), k.getDuration("timeout", Duration.ZERO));
+			assertEquals(Duration.ofMinutes(1), k.getDuration("iso", Duration.ZERO));
+			assertEquals(Duration.ofMillis(250), k.getDuration("millis", Duration.ZERO));
+			assertEquals(10L * 1024 * 1024, k.getDataSize("size", 0));
+			assertEquals(List.of("a", "b", "c"), k.getList("hosts"));
+			assertEquals(List.of(), k.getList("missing"));
+			var e = assertThrows(KeyValueConversionException.class, () -> k.getInt("big", 0));
+			assertEquals("big", e.getKey());
+			assertEquals(URI.create("file:///app.properties"), e.getSource().uri());
+			assertEquals("int", e.getType());
+			var copy = (KeyValueConversionException) roundTrip(e);
+			assertNull(copy.getKeyValue());
+			assertEquals("big", copy.getKey());
+			assertEquals(URI.create("file:///app.properties"), copy.getSource().uri());
+			assertEquals("int", copy.getType());
+			assertThrows(KeyValueConversionException.class, () -> k.getBoolean("port", false));
+		}
+		var memoized = kvs.memoize();
+		assertSame(memoized.getDuration("timeout", Duration.ZERO), memoized.getDuration("timeout", Duration.ZERO));
+		assertSame(memoized.getList("hosts"), memoized.getList("hosts"));
+	}
+
+	@Test
+	void testExpandChained() {
+		var kvs = KeyValues.builder()
+			.add("path", "/a")
+			.add("paths", "[${path}]")
+			.add("path", "${path}:/b")
+			.add("loop", "${loop}")
+			.build();
+		String actual = KeyValuesMedia.ofProperties().formatter().format(kvs.expand(Variables.empty()));
+		String expected = """
+				path=/a
+				paths=[/a\\:/b]
+				path=/a\\:/b
+				loop=${loop}
+				""";
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	void testExpandCycle() {
+		var kvs = KeyValues.builder().add("a", "${b}").add("b", "${c}").add("c", "${a}").build();
+		var e = assertThrows(InterpolationException.class, () -> kvs.expand(Variables.empty()));
+		assertEquals("Infinite recursion for key. key: 'a', reason: 'Infinite loop in key references: a->b->c->a', "
+				+ "raw: '${b}'", e.getMessage());
+	}
+
+	@Test
+	void testExpandDeep() {
+		int size = KeyValuesInterpolator.PARALLEL_THRESHOLD * 2;
+		List<KeyValue> kvs = new ArrayList<>(size);
+		kvs.add(new KeyValue("k0", "0"));
+		for (int i = 1; i < size; i++) {
+			kvs.add(new KeyValue("k" + i, "${k" + (i - 1) + "}"));
+		}
+		for (boolean parallel : new boolean[] { false, true }) {
+			var expanded = KeyValuesInterpolator.interpolate(new ListKeyValues(kvs), Variables.empty(), false,
+					parallel);
+			assertEquals(size, expanded.keyValues().size());
+			for (var kv : expanded) {
+				assertEquals("0", kv.value());
+			}
+			var reexpanded = expanded.reexpand(Map.of("k0", "1"));
+			for (var kv : reexpanded) {
+				assertEquals("1", kv.value());
+			}
+		}
+	}
+
+	@Test
+	void testReexpand() {
+		var kvs = KeyValues.builder()
+			.add("flag", "off")
+			.add("feature", "feature-${flag}")
+			.add("url", "http://${host}:8080")
+			.add("api", "${url}/api")
+			.add("which", "flag")
+			.add("dynamic", "${${which}}")
+			.add("static", "static")
+			.build();
+		var expanded = kvs.expand(Variables.builder().add("host", "localhost").build());
+		var reexpanded = expanded.reexpand(Map.of("host", "example.com"));
+		String expected = """
+				flag=off
+				feature=feature-off
+				url=http\\://example.com\\:8080
+				api=http\\://example.com\\:8080/api
+				which=flag
+				dynamic=off
+				static=static
+				""";
+		assertEquals(expected, reexpanded.format(KeyValuesMedia.ofProperties()));
+		assertReused(expanded, reexpanded, "flag", "feature", "which", "dynamic", "static");
+
+		var overridden = reexpanded.reexpand(Map.of("flag", "on"));
+		expected = """
+				flag=on
+				feature=feature-on
+				url=http\\://example.com\\:8080
+				api=http\\://example.com\\:8080/api
+				which=flag
+				dynamic=on
+				static=static
+				""";
+		assertEquals(expected, overridden.format(KeyValuesMedia.ofProperties()));
+		assertReused(reexpanded, overridden, "url", "api", "which", "static");
+		assertSame(overridden, overridden.reexpand(Map.of()));
+	}
+
+	@Test
+	void testPropertiesLexer() throws Exception {
+		String input = "# comment \\\n" + "not.continued=true\n" + "  ! another comment\r\n" + "\n" + "\t\f \n"
+				+ "plain=value\n" + "colon:value\n" + "space value\n" + "  leading = spaces around  \n"
+				+ "double==equals\n" + "sep = : both\n" + "escaped\\ key\\=\\:=escaped\\ value\n" + "continued=one \\\n"
+				+ "    two \\\r\n" + "\tthree\n" + "even=backslashes\\\\\n" + "escapes=\\t\\n\\r\\f\\q\\\\\n"
+				+ "unicode=caf\\u00E9 \\u00e9 é\n" + "empty\n" + "empty.value=\n" + "cr=only\r" + "crlf=line\r\n"
+				+ "\\\n" + "\n" + "dangling.continuation=\\\n" + "\n" + "duplicate=first\n" + "duplicate=second\n"
+				+ "eof=no newline\\";
+
+		var properties = new Properties();
+		properties.load(new StringReader(input));
+		Map<String, String> expected = new HashMap<>();
+		properties.forEach((k, v) -> expected.put((String) k, (String) v));
+
+		var media = KeyValuesMedia.ofProperties().parser();
+		List<String> keys = new ArrayList<>();
+		Map<String, String> fromString = new HashMap<>();
+		media.parse(input, (k, v) -> {
+			keys.add(k);
+			fromString.put(k, v);
+		});
+		Map<String, String> fromStream = new HashMap<>();
+		media.parse(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), fromStream::put);
+
+		assertEquals(expected, fromString);
+		assertEquals(expected, fromStream);
+		assertEquals("café é é", fromString.get("unicode"));
+		assertEquals("one two three", fromString.get("continued"));
+		assertEquals(List.of("not.continued", "plain", "colon", "space", "leading", "double", "sep", "escaped key=:",
+				"continued", "even", "escapes", "unicode", "empty", "empty.value", "cr", "crlf",
+				"dangling.continuation", "duplicate", "duplicate", "eof"), keys);
+
+		assertThrows(IllegalArgumentException.class, () -> media.parse("bad=\\u12G4", (k, v) -> {
+		}));
+		assertThrows(IllegalArgumentException.class, () -> media.parse("bad=\\u12", (k, v) -> {
+		}));
+	}
+
+	private static void assertReused(KeyValues previous, KeyValues current, String... keys) {
+		var p = previous.toMap();
+		var c = current.toMap();
+		assertEquals(p.keySet(), c.keySet());
+		var reused = List.of(keys);
+		for (var kv : current) {
+			var old = previous.stream().filter(o -> o.key().equals(kv.key())).findFirst().orElseThrow();
+			if (reused.contains(kv.key())) {
+				assertSame(old, kv, kv.key());
+			}
+			else {
+				assertNotSame(old, kv, kv.key());
+			}
+		}
+	}
+
+	static Object roundTrip(Object o) throws Exception {
+		var bytes = new ByteArrayOutputStream();
+		try (var out = new ObjectOutputStream(bytes)) {
+			out.writeObject(o);
+		}
+		try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return in.readObject();
+		}
 	}
 
 }
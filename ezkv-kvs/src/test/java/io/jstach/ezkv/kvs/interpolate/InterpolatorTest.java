@@ -0,0 +1,94 @@
+package io.jstach.ezkv.kvs.interpolate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.jstach.ezkv.kvs.interpolate.Interpolator.InterpolationException;
+import io.jstach.ezkv.kvs.interpolate.Interpolator.MissingVariableInterpolationException;
+
+class InterpolatorTest {
+
+	final Map<String, String> variables = Map.of( //
+			"a", "A", //
+			"b", "${a}B", //
+			"name", "a", //
+			"loop1", "${loop2}", //
+			"loop2", "${loop1}");
+
+	final Interpolator interpolator = Interpolator.create(variables::get);
+
+	@Test
+	void testInterpolate() {
+		assertInterpolate("plain", "plain");
+		assertInterpolate("A", "${a}");
+		assertInterpolate("[AB]", "[${b}]");
+		assertInterpolate("A", "${${name}}");
+		assertInterpolate("default", "${missing:-default}");
+		assertInterpolate("AB", "${missing:-${b}}");
+		assertInterpolate("A", "${missing:-${missing2:-${a}}}");
+		assertInterpolate("${a}", "$${a}");
+		assertInterpolate("$${a}", "$$${a}");
+		assertInterpolate("${a}A", "$${a}${a}");
+		assertInterpolate("${a", "${a");
+		assertInterpolate("$", "$");
+		/*
+		 * A key referencing itself that is missing is left as is.
+		 */
+		assertEquals("${key}", interpolator.interpolate("key", "${key}"));
+	}
+
+	@Test
+	void testDefaultIsOnlyInterpolatedIfMissing() {
+		assertInterpolate("A", "${a:-${missing}}");
+	}
+
+	@Test
+	void testMissing() {
+		var e = assertThrows(MissingVariableInterpolationException.class,
+				() -> interpolator.interpolate("key", "${missing}"));
+		assertEquals("missing", e.getVariable());
+		assertEquals("Variable is missing for key. key: 'key', variable: 'missing', raw: '${missing}'", e.getMessage());
+	}
+
+	@Test
+	void testLoop() {
+		var e = assertThrows(InterpolationException.class, () -> interpolator.interpolate("key", "${loop1}"));
+		assertEquals("Infinite recursion for key. key: 'key', reason: 'Infinite loop in property interpolation of "
+				+ "${loop1}: loop1->loop2->loop1', raw: '${loop1}'", e.getMessage());
+	}
+
+	@Test
+	void testCompile() {
+		var template = Interpolator.compile("Hello ${a}!");
+		assertEquals(template, Interpolator.compile("Hello ${a}!"));
+		assertEquals("plain", Interpolator.compile("plain").render(variables::get));
+		assertEquals("Hello ${a}!", template.raw());
+		assertEquals("Hello A!", template.render(variables::get));
+		assertEquals("Hello A!", interpolator.interpolate("key", template));
+	}
+
+	@Test
+	void testVariableTemplatesReused() {
+		Map<String, Interpolator.Template> templates = new HashMap<>();
+		var first = Interpolator.create(k -> null, variables::get, templates);
+		assertEquals("AB AB", first.interpolate("key", "${b} ${b}"));
+		var template = templates.get("${a}B");
+		assertEquals(Interpolator.compile("${a}B"), template);
+		assertEquals(1, templates.size());
+		var second = Interpolator.create(k -> null, variables::get, templates);
+		assertEquals("AB", second.interpolate("key", "${b}"));
+		assertSame(template, templates.get("${a}B"));
+	}
+
+	private void assertInterpolate(String expected, String raw) {
+		assertEquals(expected, interpolator.interpolate("key", raw));
+		assertEquals(expected, Interpolator.compile(raw).render(variables::get));
+	}
+
+}
@@ -2,17 +2,13 @@ package io.jstach.ezkv.xml;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
@@ -88,13 +84,21 @@ import io.jstach.ezkv.kvs.Variables;
  *
  * Because both formats may not be what you want you might want to use a
  * {@linkplain KeyValuesFilter filter} to clean up the results.
- * 
+ *
  * <p>
- * Both modes of {@value #MODE_PARAM} ({@link #MODE_VALUE_XPATH} and {@link #MODE_VALUE_PROPERTIES}) 
+ * Both modes of {@value #MODE_PARAM} ({@link #MODE_VALUE_XPATH} and {@link #MODE_VALUE_PROPERTIES})
  * can support array indices or not.
  * </p>
  *
  * <p>
+ * Without array indices the XML is flattened while it is read so large documents do
+ * not need to fit in memory. Array indices need the whole document because an element
+ * only gets an index if it has a sibling with the same name. In both cases the text of
+ * an element is emitted before its attributes and children and text after a child
+ * element is emitted as another value of the same key.
+ * </p>
+ *
+ * <p>
  * This module does have a service loader registration. If you do not wish to
  * use the Service Loader you can add an instance of this class to
  * {@link io.jstach.ezkv.kvs.KeyValuesSystem.Builder}.
@@ -305,6 +309,13 @@ public class XMLKeyValuesMedia implements KeyValuesMedia {
 
 class XMLFlattener implements Parser {
 
+	/*
+	 * Looking up the factory implementation is expensive so one factory is configured and
+	 * shared. Creating readers from a configured factory is thread safe. External
+	 * entities are not resolved as config should not reach out to other resources.
+	 */
+	private static final XMLInputFactory factory = createFactory();
+
 	private final String prefix;
 
 	private final String separator;
@@ -326,10 +337,16 @@ class XMLFlattener implements Parser {
 		this.indexStart = indexStart;
 	}
 
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+
 	@Override
 	public void parse(InputStream input, BiConsumer<String, String> consumer) throws IOException {
 		try {
-			flattenXML(new InputStreamReader(input), consumer);
+			flattenXML(factory.createXMLStreamReader(input), consumer);
 		}
 		catch (XMLStreamException e) {
 			throw new IOException(e);
@@ -339,7 +356,7 @@ class XMLFlattener implements Parser {
 	@Override
 	public void parse(String input, BiConsumer<String, String> consumer) {
 		try {
-			flattenXML(new StringReader(input), consumer);
+			flattenXML(factory.createXMLStreamReader(new StringReader(input)), consumer);
 		}
 		catch (XMLStreamException e) {
 			throw new RuntimeException(e);
@@ -353,19 +370,31 @@ class XMLFlattener implements Parser {
 				+ ", array=" + array + ", indexStart=" + indexStart + "]";
 	}
 
-	void flattenXML(Reader reader, BiConsumer<String, String> consumer) throws XMLStreamException {
-		var ents = entries(reader);
-		for (var e : ents) {
-			String key = keyName(e);
-			String value = e.getValue();
-			if (value != null) {
-				consumer.accept(key, value);
+	/*
+	 * Without array indices the XML is flattened while it is read. Array indices need the
+	 * whole document because an element only gets an index if a later sibling has the
+	 * same name.
+	 */
+	void flattenXML(XMLStreamReader xr, BiConsumer<String, String> consumer) throws XMLStreamException {
+		try {
+			if (!array) {
+				new PathFlattener(consumer).flatten(xr);
+				return;
+			}
+			for (var e : entries(xr)) {
+				String value = e.getValue();
+				if (value != null) {
+					consumer.accept(e.key(), value);
+				}
 			}
 		}
+		finally {
+			xr.close();
+		}
 	}
 
-	protected String attributeName(Attr attribute) {
-		return this.attributePrefix + attribute.name;
+	protected String attributeName(String name) {
+		return this.attributePrefix + name;
 	}
 
 	protected String elementName(Elm segment) {
@@ -376,22 +405,86 @@ class XMLFlattener implements Parser {
 		return segment.name + "[" + index + "]";
 	}
 
-	protected String buildXPath(Elm element) {
-		// Build the XPath string by joining the stack elements with '/'
-		String path = element.path().map(this::elementName).collect(Collectors.joining(this.separator));
-		return this.prefix + path;
-	}
+	/*
+	 * Only the key path of the open elements is kept. Every open element has the length
+	 * of its parents key in the path. The text and attributes of the innermost element
+	 * are held until its first child starts or it ends so that its text comes before its
+	 * attributes and children. Text after a child is emitted when the next child starts
+	 * or the element ends.
+	 */
+	final class PathFlattener {
 
-	protected String buildXPath(Attr attr) {
-		String path = buildXPath(attr.parent);
-		return path + this.separator + attributeName(attr);
-	}
+		private final BiConsumer<String, String> consumer;
+
+		private final StringBuilder path = new StringBuilder();
+
+		private final StringBuilder text = new StringBuilder();
+
+		private final List<String> attributes = new ArrayList<>();
+
+		private int[] lengths = new int[16];
+
+		private int depth;
+
+		PathFlattener(BiConsumer<String, String> consumer) {
+			this.consumer = consumer;
+		}
+
+		void flatten(XMLStreamReader xr) throws XMLStreamException {
+			while (xr.hasNext()) {
+				int event = xr.next();
+				switch (event) {
+					case XMLStreamConstants.START_ELEMENT -> {
+						flush();
+						push(xr.getLocalName());
+						for (int i = 0; i < xr.getAttributeCount(); i++) {
+							attributes.add(xr.getAttributeLocalName(i));
+							attributes.add(xr.getAttributeValue(i));
+						}
+					}
+					case XMLStreamConstants.CHARACTERS -> {
+						if (depth == 0) {
+							throw new IllegalStateException("bug");
+						}
+						if (!xr.isWhiteSpace()) {
+							text.append(xr.getTextCharacters(), xr.getTextStart(), xr.getTextLength());
+						}
+					}
+					case XMLStreamConstants.END_ELEMENT -> {
+						if (depth > 0) {
+							flush();
+							depth--;
+							path.setLength(lengths[depth]);
+						}
+					}
+				}
+			}
+		}
+
+		private void push(String name) {
+			if (depth == lengths.length) {
+				lengths = Arrays.copyOf(lengths, depth * 2);
+			}
+			lengths[depth] = path.length();
+			path.append(depth == 0 ? prefix : separator).append(name);
+			depth++;
+		}
+
+		private void flush() {
+			if (text.isEmpty() && attributes.isEmpty()) {
+				return;
+			}
+			String key = path.toString();
+			if (!text.isEmpty()) {
+				consumer.accept(key, text.toString());
+				text.setLength(0);
+			}
+			for (int i = 0; i < attributes.size(); i += 2) {
+				consumer.accept(key + separator + attributeName(attributes.get(i)), attributes.get(i + 1));
+			}
+			attributes.clear();
+		}
 
-	protected String keyName(Ent ent) {
-		return switch (ent) {
-			case Elm e -> buildXPath(e);
-			case Attr a -> buildXPath(a);
-		};
 	}
 
 	sealed abstract class Ent {
@@ -405,6 +498,8 @@ class XMLFlattener implements Parser {
 
 		abstract @Nullable String getValue();
 
+		abstract String key();
+
 	}
 
 	final class Elm extends Ent {
@@ -415,42 +510,63 @@ class XMLFlattener implements Parser {
 
 		private @Nullable String value;
 
-		Map<String, List<Elm>> children = new HashMap<>();
+		private @Nullable String key;
+
+		private @Nullable Map<String, List<Elm>> children;
+
+		/*
+		 * The text after the last child so far.
+		 */
+		private @Nullable Txt tail;
 
 		public Elm(String name, @Nullable Elm parent) {
 			super(name);
 			this.parent = parent;
 		}
 
-		Stream<Elm> path() {
-			ArrayList<Elm> elms = new ArrayList<>();
-			var parent = this;
-			while (parent != null) {
-				elms.add(parent);
-				parent = parent.parent;
-			}
-			Collections.reverse(elms);
-			return elms.stream();
-		}
-
 		public void addChild(Elm child) {
+			var children = this.children;
+			if (children == null) {
+				this.children = children = new HashMap<>();
+			}
 			children.computeIfAbsent(child.name, (k) -> new ArrayList<Elm>()).add(child);
+			this.tail = null;
 		}
 
-		public void addValue(String text) {
-			String v = this.value;
-			if (v == null) {
-				this.value = text;
+		/*
+		 * Text before the first child is the value of the element. Text after a child is
+		 * another value with the key of the element which is only added to the entries
+		 * when it starts so that it comes after the entries of the child like when
+		 * flattening while reading.
+		 */
+		public void addValue(String text, List<Ent> entries) {
+			if (children == null) {
+				String v = this.value;
+				this.value = v == null ? text : v + text;
+				return;
 			}
-			else {
-				this.value = v + text;
+			var tail = this.tail;
+			if (tail == null) {
+				this.tail = tail = new Txt(this);
+				entries.add(tail);
 			}
+			tail.text.append(text);
 		}
 
+		/*
+		 * Called when the element ends. The children are not needed after their indices
+		 * are set.
+		 */
 		public void adjust() {
-			for (var e : children.entrySet()) {
-				adjust(e.getValue());
+			this.tail = null;
+			var children = this.children;
+			if (children == null) {
+				return;
+			}
+			for (var e : children.values()) {
+				adjust(e);
 			}
+			this.children = null;
 		}
 
 		void adjust(List<Elm> children) {
@@ -469,13 +585,28 @@ class XMLFlattener implements Parser {
 		}
 
 		@Override
+		@Nullable
 		String getValue() {
 			return value;
 		}
 
+		/*
+		 * The key is built from the key of the parent so the path is only walked once.
+		 */
+		@Override
+		String key() {
+			String key = this.key;
+			if (key == null) {
+				var parent = this.parent;
+				String name = elementName(this);
+				this.key = key = parent == null ? prefix + name : parent.key() + separator + name;
+			}
+			return key;
+		}
+
 		@Override
 		public String toString() {
-			return "Elm [name=" + name + ", index=" + index + ", value=" + value + ", children=" + children + "]";
+			return "Elm [name=" + name + ", index=" + index + ", value=" + value + "]";
 		}
 
 	}
@@ -498,13 +629,38 @@ class XMLFlattener implements Parser {
 			return value;
 		}
 
+		@Override
+		String key() {
+			return parent.key() + separator + attributeName(name);
+		}
+
 	}
 
-	List<Ent> entries(Reader reader) throws XMLStreamException {
-		XMLInputFactory factory = XMLInputFactory.newInstance();
-		XMLStreamReader xr = factory.createXMLStreamReader(reader);
+	final class Txt extends Ent {
+
+		final StringBuilder text = new StringBuilder();
+
+		final Elm parent;
+
+		public Txt(Elm parent) {
+			super(parent.name);
+			this.parent = parent;
+		}
+
+		@Override
+		@Nullable
+		String getValue() {
+			return text.toString();
+		}
+
+		@Override
+		String key() {
+			return parent.key();
+		}
+
+	}
 
-		// Stack to maintain the current path as we traverse the XML
+	List<Ent> entries(XMLStreamReader xr) throws XMLStreamException {
 		List<Ent> entries = new ArrayList<>();
 
 		Elm current = null;
@@ -532,9 +688,8 @@ class XMLFlattener implements Parser {
 						throw new IllegalStateException("bug");
 					}
 					if (!xr.isWhiteSpace()) {
-						// String textXPath = buildXPath(current);
 						String value = xr.getText();
-						current.addValue(value);
+						current.addValue(value, entries);
 					}
 				}
 				case XMLStreamConstants.END_ELEMENT -> {
@@ -51,6 +51,51 @@ class XMLKeyValuesMediaTest {
 		assertEquals(expected, actual);
 	}
 
+	@Test
+	void testStreaming() {
+		String xml = """
+				<?xml version="1.0" encoding="UTF-8"?>
+				<!-- text is emitted before attributes and children and again after a child -->
+				<a x="1">one &amp; two<![CDATA[?]]><b y="2"><c>3</c></b>after<b>4</b></a>
+				""";
+		var kvs = new XMLKeyValuesMedia().parser().parse(xml);
+		String expected = """
+				KeyValues[
+				a=one & two?
+				a.x=1
+				a.b.y=2
+				a.b.c=3
+				a=after
+				a.b=4
+				]
+				""";
+		assertEquals(expected, kvs.toString());
+	}
+
+	@Test
+	void testMixedContentWithAndWithoutArrayIndices() {
+		String xml = """
+				<a x="1">one<b>2</b>two &amp;<![CDATA[ three]]><c y="3">4</c>five</a>
+				""";
+		var vars = Variables.builder();
+		vars.add(XMLKeyValuesMedia.ARRAY_KEY_PARAM, "array");
+		var array = new XMLKeyValuesMedia().parser(vars.build()).parse(xml);
+		var streamed = new XMLKeyValuesMedia().parser().parse(xml);
+		String expected = """
+				KeyValues[
+				a=one
+				a.x=1
+				a.b=2
+				a=two & three
+				a.c=4
+				a.c.y=3
+				a=five
+				]
+				""";
+		assertEquals(expected, streamed.toString());
+		assertEquals(expected, array.toString());
+	}
+
 	@CartesianTest
 	void testParameter(@CartesianTest.Enum XMLKeyValuesMedia.Parameter parameter)
 			throws NoSuchFileException, FileNotFoundException, IOException {